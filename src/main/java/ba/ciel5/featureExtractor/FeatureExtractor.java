@@ -6,11 +6,32 @@
 
 package ba.ciel5.featureExtractor;
 
+import ba.ciel5.featureExtractor.features.IAbstractSyntaxTreeFeatureGroup;
+import ba.ciel5.featureExtractor.features.IContentFeatureGroup;
 import ba.ciel5.featureExtractor.features.IFeatureGroup;
+import ba.ciel5.featureExtractor.features.IFeatureListener;
+import ba.ciel5.featureExtractor.features.IHistoryFeatureGroup;
+import ba.ciel5.featureExtractor.features.ILexicalFeatureGroup;
 import ba.ciel5.featureExtractor.model.*;
 import ba.ciel5.featureExtractor.ngramfeatures.NGramFeatureGroup;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeCache;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeIndex;
 import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeUtil;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeWalker;
+import ba.ciel5.featureExtractor.utils.BudgetExceededException;
+import ba.ciel5.featureExtractor.utils.CommentMask;
+import ba.ciel5.featureExtractor.utils.CommitHistoryIndex;
+import ba.ciel5.featureExtractor.utils.FlatAbstractSyntaxTree;
 import ba.ciel5.featureExtractor.utils.HibernateUtil;
+import ba.ciel5.featureExtractor.utils.IAbstractSyntaxTreeListener;
+import ba.ciel5.featureExtractor.utils.LexicalScan;
+import ba.ciel5.featureExtractor.utils.ParserOptions;
+import ba.ciel5.featureExtractor.utils.SyntaxCache;
+import ba.ciel5.featureExtractor.utils.Watchdog;
+import ba.ciel5.featureExtractor.repository.BlobIndex;
+import ba.ciel5.featureExtractor.repository.BlobSizePolicy;
+import ba.ciel5.featureExtractor.repository.HistoryWalker;
+import ba.ciel5.featureExtractor.repository.ISourceCodeHandler;
 import com.google.common.collect.Lists;
 import javafx.util.Pair;
 import org.apache.commons.cli.ParseException;
@@ -18,6 +39,8 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.hibernate.HibernateError;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
@@ -27,16 +50,65 @@ import ba.ciel5.featureExtractor.repository.Git;
 import ba.ciel5.featureExtractor.utils.Config;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class FeatureExtractor {
     private static Logger logger;
-    private static Git git;
-    private static int counter = 1;
     private static Config cfg;
+    // feature groups of all repositories: content groups are extracted once per blob, the others once per version
+    private static List<IFeatureGroup> contentFeatureGroups;
+    private static List<IFeatureGroup> historyFeatureGroups;
+    // Large blobs of all repositories are extracted one after the other here, so they do not hold up the partitions
+    private static ExecutorService slowLane;
+    // Parsed blobs of all repositories, forks and copies of a repository share most of their blobs
+    private static AbstractSyntaxTreeCache astCache;
+    // false if all content groups are lexical, then the blobs are scanned instead of parsed
+    private static boolean astNeeded;
+    // true if a content group needs the JDT tree, the nGrams and the lexical groups do not
+    private static boolean jdtTreeNeeded;
+    // Syntax of the blobs of earlier runs on disk, null if disabled
+    private static SyntaxCache syntaxCache;
+    // Time and size budgets of every file, files which exceed them are quarantined
+    private static Watchdog watchdog;
+    // Report lines of the quarantined versions of all repositories
+    private static Queue<String> quarantine = new ConcurrentLinkedQueue<String>();
+    private static final NGramFeatureGroup nGramFeatureGroup = new NGramFeatureGroup();
+
+    private final Repository repository;
+    private Git git;
+    private List<Commit> commits;
+    // Index of the commits for the history feature groups, null if none is enabled
+    private CommitHistoryIndex history;
+    private List<Version> versions;
+    private AtomicInteger counter = new AtomicInteger(1);
+    private AtomicInteger failedVersions = new AtomicInteger();
+    private AtomicInteger quarantinedVersions = new AtomicInteger();
     // The big map version --> nGram Level (statement, methods, ..) --> nGram Size (1gram, 2gram) --> nGram, how often it appears
-    private static Map<Version, Map<Integer,Map<Integer,Map<String, Integer>>>> versionNGram = new HashMap<Version, Map<Integer,Map<Integer,Map<String, Integer>>>>();
+    private Map<Version, Map<Integer,Map<Integer,Map<String, Integer>>>> versionNGram = new ConcurrentHashMap<Version, Map<Integer,Map<Integer,Map<String, Integer>>>>();
+    // Content features per blob. Versions with the same blob share the result of the first extraction
+    private ConcurrentMap<ObjectId, CompletableFuture<BlobFeatures>> blobFeatures = new ConcurrentHashMap<ObjectId, CompletableFuture<BlobFeatures>>();
+    private AtomicInteger blobFeatureHits = new AtomicInteger();
+    private AtomicInteger blobFeatureMisses = new AtomicInteger();
+    private Set<ObjectId> slowLaneBlobs = ConcurrentHashMap.newKeySet();
+    // Versions waiting for a blob of the slow lane, saved after all partitions
+    private Map<Version, ObjectId> deferredVersions = Collections.synchronizedMap(new LinkedHashMap<Version, ObjectId>());
+    // Versions waiting for the streamed history features, extracted per file after all partitions
+    private Queue<Version> streamedVersions = new ConcurrentLinkedQueue<Version>();
 
     public static void main(String[] args) {
 
@@ -63,22 +135,293 @@ public class FeatureExtractor {
         logger = LogManager.getRootLogger();
         logger.log(Level.INFO, "Starting IFeature Extractor.");
 
-        // Get Repository from DB
-        List<Repository> repositories = null;
+        // Everything shared by the repositories is set up only once
+        configurePackCache();
+        AbstractSyntaxTreeUtil.setDefaultOptions(new ParserOptions(cfg.getResolveBindings(), cfg.getStatementsRecovery(), cfg.getSourceLevel()));
+        List<IFeatureGroup> featureGroups = getFeatureGroups();
+        contentFeatureGroups = featureGroups.stream()
+                .filter(f -> f instanceof IContentFeatureGroup)
+                .collect(Collectors.toList());
+        historyFeatureGroups = featureGroups.stream()
+                .filter(f -> !(f instanceof IContentFeatureGroup))
+                .collect(Collectors.toList());
+        jdtTreeNeeded = contentFeatureGroups.stream().anyMatch(f -> !(f instanceof ILexicalFeatureGroup));
+        astNeeded = cfg.getFeatureGroups().contains("NGramFeatureGroup") || jdtTreeNeeded;
+        if (!astNeeded)
+            logger.log(Level.INFO, "Only lexical feature groups are enabled, the files are scanned instead of parsed.");
+        astCache = new AbstractSyntaxTreeCache(cfg.getAstCacheSize());
+        if (cfg.getSyntaxCacheDirectory() != null) {
+            try {
+                syntaxCache = new SyntaxCache(Paths.get(cfg.getSyntaxCacheDirectory()).toFile(), AbstractSyntaxTreeUtil.getDefaultOptions(),
+                        cfg.getSyntaxCacheSize());
+                logger.log(Level.INFO, "Syntax cache with " + syntaxCache.size() + " blobs in " + cfg.getSyntaxCacheDirectory() +
+                        " for " + syntaxCache.getSettings() + ".");
+            } catch (IOException e) {
+                logger.log(Level.WARN, "Syntax cache could not be opened, all blobs are read and parsed.", e);
+            }
+        }
+        // the threads which can parse: the workers of the partitions, the repository threads and the slow lane
+        watchdog = new Watchdog(cfg.getParseTimeout(), cfg.getExtractTimeout(), cfg.getMaxAstNodes(),
+                ForkJoinPool.getCommonPoolParallelism() + cfg.getParallelRepositories() + 1);
+        slowLane = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "slow-lane");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Repository> repositories = getRepositories();
+        if (repositories.isEmpty()) {
+            logger.log(Level.ERROR, "No repository found for " + cfg.getRepositoryNames() +
+                    (cfg.getRepositoryNamePattern() != null ? " or pattern " + cfg.getRepositoryNamePattern() : ""));
+            exit();
+        }
+
+        // The repositories share the worker pool of the partitions, so small repositories run side by side
+        ExecutorService repositoryPool = Executors.newFixedThreadPool(Math.min(cfg.getParallelRepositories(), repositories.size()));
+        Map<Repository, Future<String>> reports = new LinkedHashMap<Repository, Future<String>>();
+        for (Repository repository : repositories)
+            reports.put(repository, repositoryPool.submit(() -> new FeatureExtractor(repository).run()));
+        repositoryPool.shutdown();
+
+        int failedRepositories = 0;
+        logger.log(Level.INFO, "Summary of " + repositories.size() + " repositories:");
+        for (Map.Entry<Repository, Future<String>> report : reports.entrySet()) {
+            try {
+                logger.log(Level.INFO, report.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                failedRepositories++;
+                logger.log(Level.ERROR, report.getKey().getName() + ": failed. " + e.getCause().getMessage());
+            }
+        }
+        slowLane.shutdown();
+        watchdog.shutdown();
+        writeQuarantineReport();
+        logger.log(Level.INFO, String.format("AST cache: %d hits, %d misses, %d evictions, %d bytes estimated.",
+                astCache.getHits(), astCache.getMisses(), astCache.getEvictions(), astCache.getBytes()));
+        if (syntaxCache != null) {
+            logger.log(Level.INFO, String.format("Syntax cache: %d hits, %d misses, %d appended, %d skipped at the size limit, %d blobs.",
+                    syntaxCache.getHits(), syntaxCache.getMisses(), syntaxCache.getAppends(), syntaxCache.getSkipped(), syntaxCache.size()));
+            syntaxCache.close();
+        }
+
+        if (failedRepositories > 0)
+            logger.log(Level.WARN, failedRepositories + " of " + repositories.size() + " repositories failed.");
+        logger.log(Level.INFO, "ba.ciel5.featureExtractor.FeatureExtractor is done. See ya!");
+        exit();
+    }
+
+    /**
+     * @param repository the repository to extract
+     */
+    private FeatureExtractor(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Extract and save the features of all versions of the repository
+     * @return a report line of the repository
+     * @throws IOException if the repository or its history could not be read
+     */
+    private String run() throws IOException {
+        long start = System.currentTimeMillis();
+        logger.log(Level.INFO, "Starting repository " + repository.getName() + ".");
+        try {
+            git = new Git(repository.getUrl());
+        } catch (IOException e) {
+            throw new IOException("Repository " + repository.getUrl() + " could not be read.", e);
+        }
+
+        try {
+            if (cfg.isGitHistory())
+                readHistoryFromGit();
+            else
+                readHistoryFromDatabase();
+
+            if (historyFeatureGroups.stream().anyMatch(f -> f instanceof IHistoryFeatureGroup)) {
+                long indexStart = System.currentTimeMillis();
+                history = new CommitHistoryIndex(commits);
+                logger.log(Level.INFO, "History index of " + commits.size() + " commits ready after " +
+                        (System.currentTimeMillis() - indexStart) + " ms.");
+            }
+
+            if (cfg.getBlobIndex()) {
+                try {
+                    long indexStart = System.currentTimeMillis();
+                    BlobIndex blobIndex = git.loadBlobIndex(cfg.getPersistBlobIndex());
+                    logger.log(Level.INFO, "Blob index with " + blobIndex.getEntryCount() + " changed files in " +
+                            blobIndex.getCommitCount() + " commits ready after " + (System.currentTimeMillis() - indexStart) + " ms.");
+                } catch (IOException e) {
+                    logger.log(Level.WARN, "Blob index could not be built, resolving every file by its commit tree.", e);
+                }
+            }
+            git.setSizePolicy(new BlobSizePolicy(cfg.getSlowLaneFileSize(), cfg.getLexicalOnlyFileSize(), cfg.getMaxFileSize()));
+
+            extractAllFeatures();
+
+            logger.log(Level.INFO, "Extracted content features of " + blobFeatures.size() + " distinct blobs for " + versions.size() + " versions.");
+            logger.log(Level.INFO, String.format("Blob feature cache: %d hits, %d misses.", blobFeatureHits.get(), blobFeatureMisses.get()));
+            logger.log(Level.INFO, String.format("Blob index: %d hits. Commit tree cache: %d hits, %d misses. Read %d blobs (%d streamed) with %d bytes.",
+                    git.getBlobIndexHits(), git.getTreeCacheHits(), git.getTreeCacheMisses(), git.getBlobsRead(), git.getLargeBlobsRead(), git.getBytesRead()));
+            BlobSizePolicy sizePolicy = git.getSizePolicy();
+            logger.log(Level.INFO, String.format("Blob size policy: %d full, %d slow lane, %d lexical only, %d skipped.",
+                    sizePolicy.getCount(BlobSizePolicy.Action.FULL), sizePolicy.getCount(BlobSizePolicy.Action.SLOW_LANE),
+                    sizePolicy.getCount(BlobSizePolicy.Action.LEXICAL_ONLY), sizePolicy.getCount(BlobSizePolicy.Action.SKIP)));
+
+            if ( cfg.getFeatureGroups().contains("NGramFeatureGroup"))
+                saveNGrams(versions);
+        } finally {
+            git.closeRepository();
+        }
+
+        return String.format("%s: %d versions, %d distinct blobs, %d failed, %d skipped, %d quarantined, %.1f s",
+                repository.getName(), versions.size(), blobFeatures.size(), failedVersions.get(),
+                git.getSizePolicy().getCount(BlobSizePolicy.Action.SKIP), quarantinedVersions.get(),
+                (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    /**
+     * Extract and save the features of all versions in partitions, the partitions of all repositories share one worker pool
+     */
+    private void extractAllFeatures() {
+        int log_interval_temp = 1, size = versions.size();
+        if (versions.size() > 1000)
+            log_interval_temp = 100;
+        final int log_interval = log_interval_temp;
+
+        Integer partitionSize = cfg.getPartitions();
+
+        Lists.partition(versions, partitionSize).parallelStream().forEach( p -> runInTransaction(session -> {
+            Map<Version, ObjectId> blobIds = getBlobIds(p);
+            extractBlobFeatures(blobIds);
+            p.stream().forEach(version -> {
+                ObjectId blobId = blobIds.get(version);
+                if (isOnSlowLane(blobId))
+                    deferredVersions.put(version, blobId);
+                else
+                    processAllFeatures(version, blobId, log_interval, size, session);
+            });
+        }));
+
+        if (!deferredVersions.isEmpty()) {
+            logger.log(Level.INFO, "Waiting for " + deferredVersions.size() + " versions of the slow lane.");
+            runInTransaction(session -> deferredVersions.forEach((version, blobId) ->
+                    processAllFeatures(version, blobId, log_interval, size, session)));
+        }
+
+        if (!streamedVersions.isEmpty())
+            streamHistoryFeatures();
+    }
+
+    /**
+     * Extract and save the features of the streamed history feature groups, in partitions of files.
+     * A group gets all versions of a file at once, so it can go through the history of the file in one pass.
+     */
+    private void streamHistoryFeatures() {
+        Map<String, List<Version>> files = streamedVersions.stream()
+                .collect(Collectors.groupingBy(Version::getFileId, LinkedHashMap::new, Collectors.toList()));
+        List<IHistoryFeatureGroup> featureGroups = historyFeatureGroups.stream()
+                .filter(f -> f instanceof IHistoryFeatureGroup)
+                .map(f -> (IHistoryFeatureGroup) f)
+                .collect(Collectors.toList());
+        logger.log(Level.INFO, "Streaming the history features of " + streamedVersions.size() + " versions of " + files.size() + " files.");
+
+        Lists.partition(new ArrayList<List<Version>>(files.values()), cfg.getPartitions()).parallelStream().forEach(p -> runInTransaction(session -> {
+            for (List<Version> fileVersions : p) {
+                for (IHistoryFeatureGroup featureGroup : featureGroups)
+                    featureGroup.extractTimeline(history, fileVersions, (version, features) -> saveFeatures(version, features, session));
+            }
+        }));
+    }
+
+    /**
+     * Run some work in a session of its own and commit it
+     * @param work the work
+     * @throws HibernateException if the work failed, the transaction is rolled back
+     */
+    private static void runInTransaction(Consumer<Session> work) {
+        Session session = HibernateUtil.openSession();
+        Transaction transaction = null;
         try {
-            repositories = HibernateUtil.complexQuery("FROM Repository WHERE name = :name", new ArrayList(Arrays.asList(new Pair("name", cfg.getRepositoryName()))));
+            transaction = session.beginTransaction();
+            work.accept(session);
+            transaction.commit();
+        } catch (HibernateException e) {
+            if (transaction != null)
+                transaction.rollback();
+            session.close();
+            throw new HibernateException(e.getMessage());
+        }
+        session.close();
+    }
+
+    /**
+     * program exit
+     */
+    private static void exit() {
+        if (logger != null)
+            logger.log(Level.WARN, "Quitting program.");
+        System.exit(0);
+    }
+
+    /**
+     * Write the quarantined versions of all repositories to the quarantine report, one version per line
+     */
+    private static void writeQuarantineReport() {
+        if (quarantine.isEmpty())
+            return;
+        List<String> lines = new ArrayList<String>();
+        lines.add("repository;commit;path;blob;phase;elapsed ms;reason");
+        lines.addAll(quarantine);
+        try {
+            Files.write(Paths.get(cfg.getQuarantineReport()), lines, StandardCharsets.UTF_8);
+            logger.log(Level.WARN, quarantine.size() + " versions exceeded their budget, see " + cfg.getQuarantineReport());
+        } catch (IOException e) {
+            logger.log(Level.ERROR, "Quarantine report could not be written: " + String.join(System.lineSeparator(), lines), e);
+        }
+    }
+
+    /**
+     * Get the repositories to extract, by name or by pattern. In git mode the repository comes from the config.
+     * @return the repositories
+     */
+    private static List<Repository> getRepositories() {
+        if (cfg.isGitHistory())
+            return new ArrayList<Repository>(Arrays.asList(
+                    new Repository(cfg.getRepositoryId().toString(), cfg.getRepositoryName(), cfg.getRepositoryUrl())));
+
+        List<Repository> all = new ArrayList<Repository>();
+        try {
+            all = HibernateUtil.simpleQuery("FROM Repository");
         } catch (HibernateError e) {
             logger.log(Level.ERROR, "DB Query failed", e);
         }
-        if (repositories.size() != 1) {
-            logger.log(Level.ERROR, "No repository found or more than one found with name " + cfg.getRepositoryName());
-            exit();
+
+        // repository id --> repository, a repository matched by name and pattern is extracted once
+        Map<String, Repository> repositories = new LinkedHashMap<String, Repository>();
+        for (String name : cfg.getRepositoryNames()) {
+            List<Repository> named = all.stream().filter(r -> name.equals(r.getName())).collect(Collectors.toList());
+            if (named.size() != 1)
+                logger.log(Level.ERROR, "No repository found or more than one found with name " + name);
+            else
+                repositories.put(named.get(0).getId(), named.get(0));
+        }
+        if (cfg.getRepositoryNamePattern() != null) {
+            for (Repository repository : all) {
+                if (repository.getName() != null && repository.getName().matches(cfg.getRepositoryNamePattern()))
+                    repositories.putIfAbsent(repository.getId(), repository);
+            }
         }
-        Repository repository = repositories.get(0);
-        String repositoryPath = repository.getUrl();
+        return new ArrayList<Repository>(repositories.values());
+    }
 
+    /**
+     * Read the commits and versions (except deleted ones) of the repository from the crawler database
+     */
+    private void readHistoryFromDatabase() {
         // Get all versions (except deleted ones)
-        List<Version> versions = null;
         try {
             versions = HibernateUtil.complexQuery("SELECT version " +
                             "FROM Commit as c " +
@@ -94,12 +437,12 @@ public class FeatureExtractor {
                             )));
         } catch (HibernateError e) {
             logger.log(Level.ERROR, "DB Query failed", e);
+            versions = new ArrayList<Version>();
         }
 
         //Get all commits
-        List<Commit> commitsFromDB = null;
         try {
-            commitsFromDB = HibernateUtil.complexQuery(
+            commits = HibernateUtil.complexQuery(
                         "FROM Commit as c " +
                                 "WHERE c.repositoryId = :repositoryId"
                     , new ArrayList(
@@ -107,58 +450,110 @@ public class FeatureExtractor {
                                     new Pair("repositoryId", Integer.parseInt(repository.getId())))));
         } catch (HibernateError e) {
             logger.log(Level.ERROR, "DB Query failed", e);
+            commits = new ArrayList<Commit>();
         }
-        final List<Commit> commits = commitsFromDB;
+    }
 
-        // Initialize repository
+    /**
+     * Walk the history of the repository instead of reading the crawler database
+     * @throws IOException if the history could not be read
+     */
+    private void readHistoryFromGit() throws IOException {
+        HistoryWalker historyWalker = new HistoryWalker(git, Integer.parseInt(repository.getId()));
         try {
-            git = new Git(repositoryPath);
+            commits = historyWalker.walk();
         } catch (IOException e) {
-            logger.log(Level.ERROR, "Repository " + repositoryPath + " could not be read.", e);
-            exit();
+            throw new IOException("History of repository " + repository.getUrl() + " could not be read.", e);
         }
+        saveHistory(repository, historyWalker.getFiles(), commits);
 
-        List<IFeatureGroup> featureGroups = getFeatureGroups();
-
-        int log_interval_temp = 1, size = versions.size();
-        if (versions.size() > 1000)
-            log_interval_temp = 100;
-        final int log_interval = log_interval_temp;
+        // All versions of java files (except deleted ones)
+        Set<String> javaFiles = historyWalker.getFiles().stream()
+                .filter(f -> "Java".equals(f.getLanguage()))
+                .map(File::getId)
+                .collect(Collectors.toSet());
+        versions = commits.stream()
+                .flatMap(c -> c.getVersions().stream())
+                .filter(v -> javaFiles.contains(v.getFileId()) && !v.getDeleted())
+                .collect(Collectors.toList());
+        logger.log(Level.INFO, "Read " + commits.size() + " commits and " + versions.size() + " versions from the history.");
+    }
 
-        Integer partitionSize = cfg.getPartitions();
+    /**
+     * Configure the pack cache of jgit before the repository is opened.
+     * The cache is shared by all repositories, values missing in the config keep the default of jgit.
+     */
+    private static void configurePackCache() {
+        WindowCacheConfig windowCacheConfig = new WindowCacheConfig();
+        if (cfg.getPackedGitLimit() != null)
+            windowCacheConfig.setPackedGitLimit(cfg.getPackedGitLimit());
+        if (cfg.getPackedGitWindowSize() != null)
+            windowCacheConfig.setPackedGitWindowSize(cfg.getPackedGitWindowSize());
+        if (cfg.getPackedGitOpenFiles() != null)
+            windowCacheConfig.setPackedGitOpenFiles(cfg.getPackedGitOpenFiles());
+        if (cfg.getPackedGitMMAP() != null)
+            windowCacheConfig.setPackedGitMMAP(cfg.getPackedGitMMAP());
+        if (cfg.getDeltaBaseCacheLimit() != null)
+            windowCacheConfig.setDeltaBaseCacheLimit(cfg.getDeltaBaseCacheLimit());
+        if (cfg.getStreamFileThreshold() != null)
+            windowCacheConfig.setStreamFileThreshold(cfg.getStreamFileThreshold());
+        try {
+            windowCacheConfig.install();
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.ERROR, "Invalid pack cache config: " + e.getMessage());
+            exit();
+        }
+        logger.log(Level.INFO, String.format("Pack cache: limit %d bytes, window %d bytes, %d open files, mmap %b, delta base cache %d bytes, stream threshold %d bytes.",
+                windowCacheConfig.getPackedGitLimit(), windowCacheConfig.getPackedGitWindowSize(), windowCacheConfig.getPackedGitOpenFiles(),
+                windowCacheConfig.isPackedGitMMAP(), windowCacheConfig.getDeltaBaseCacheLimit(), windowCacheConfig.getStreamFileThreshold()));
+    }
 
-        Lists.partition(versions, partitionSize).parallelStream().forEach( p -> {
-            Session session = HibernateUtil.openSession();
-            Transaction transaction = null;
-            try {
-                transaction = session.beginTransaction();
-                p.stream().forEach(version ->
-                        processAllFeatures(commits, version, featureGroups, log_interval, size, session));
-                transaction.commit();
-            } catch (HibernateException e) {
-                if (transaction != null)
-                    transaction.rollback();
-                session.close();
-                throw new HibernateException(e.getMessage());
-            }
+    /**
+     * Save the walked history, so the features can refer to its versions.
+     * The ids are the same for the same history, so a second run updates the same rows.
+     * The entities are flushed and cleared in batches of the jdbc batch size, so the session does not keep the whole history.
+     * @param repository the repository
+     * @param files all files of the history
+     * @param commits all commits of the history with their versions
+     */
+    private static void saveHistory(Repository repository, Collection<File> files, List<Commit> commits) {
+        Session session = HibernateUtil.openSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            // the rows refer to the rows saved before them
+            int saved = saveInBatches(session, Collections.singletonList(repository), 0);
+            saved = saveInBatches(session, files, saved);
+            saved = saveInBatches(session, commits, saved);
+            for (Commit commit : commits)
+                saved = saveInBatches(session, commit.getVersions(), saved);
+            transaction.commit();
+        } catch (HibernateException e) {
+            if (transaction != null)
+                transaction.rollback();
             session.close();
-        });
-
-        if ( cfg.getFeatureGroups().contains("NGramFeatureGroup"))
-            saveNGrams(versions);
-
-        git.closeRepository();
-        logger.log(Level.INFO, "ba.ciel5.featureExtractor.FeatureExtractor is done. See ya!");
-        exit();
+            throw new HibernateException(e.getMessage());
+        }
+        session.close();
     }
 
     /**
-     * program exit
+     * Save or update entities, flush and clear the session after every batch
+     * @param session the session
+     * @param entities the entities to save
+     * @param saved number of entities the session saved before
+     * @return number of entities the session saved
      */
-    private static void exit() {
-        logger.log(Level.WARN, "Quitting program.");
-        git.closeRepository();
-        System.exit(0);
+    private static int saveInBatches(Session session, Collection<?> entities, int saved) {
+        int batchSize = HibernateUtil.getBatchSize();
+        for (Object entity : entities) {
+            session.saveOrUpdate(entity);
+            if (++saved % batchSize == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+        return saved;
     }
 
     /**
@@ -200,35 +595,191 @@ public class FeatureExtractor {
         return classes;
     }
 
+    /**
+     * Resolve the blobs of versions
+     * @param versions the versions to resolve
+     * @return version --> blob, versions which could not be resolved are missing
+     */
+    private Map<Version, ObjectId> getBlobIds(List<Version> versions) {
+        Map<Version, ObjectId> blobIds = new LinkedHashMap<Version, ObjectId>();
+        for (Version version : versions) {
+            try {
+                blobIds.put(version, git.getBlobId(version.getPath(), version.getCommitId()));
+            } catch (IOException e) {
+                failedVersions.incrementAndGet();
+                String msg = "There was a problem with the file " + version.getPath() +
+                        " from commit " + version.getCommitId() + ". Skipping this one.";
+                logger.log(Level.WARN, msg, e);
+            }
+        }
+        return blobIds;
+    }
+
+    /**
+     * Extract the content features of all blobs which are not extracted yet by this or another partition.
+     * The blobs are read in one batch in pack order and parsed while the next blobs are loaded.
+     * @param blobIds version --> blob
+     */
+    private void extractBlobFeatures(Map<Version, ObjectId> blobIds) {
+        // the first version of every blob nobody else extracts
+        Map<Version, CompletableFuture<BlobFeatures>> claimed = new LinkedHashMap<Version, CompletableFuture<BlobFeatures>>();
+        blobIds.forEach((version, blobId) -> {
+            CompletableFuture<BlobFeatures> features = new CompletableFuture<BlobFeatures>();
+            if (blobFeatures.putIfAbsent(blobId, features) == null) {
+                claimed.put(version, features);
+                blobFeatureMisses.incrementAndGet();
+            } else {
+                blobFeatureHits.incrementAndGet();
+            }
+        });
+
+        try {
+            // decide by size before loading, only full and lexical only blobs are read in the batch
+            Map<Version, CompletableFuture<BlobFeatures>> batch = new LinkedHashMap<Version, CompletableFuture<BlobFeatures>>();
+            Set<Version> lexicalOnly = new HashSet<Version>();
+            claimed.forEach((version, features) -> {
+                ObjectId blobId = blobIds.get(version);
+                long blobSize;
+                BlobSizePolicy.Action action;
+                try {
+                    blobSize = git.getBlobSize(blobId);
+                    action = git.getSizePolicy().decide(blobSize);
+                } catch (IOException e) {
+                    features.completeExceptionally(e);
+                    return;
+                }
+                if (action != BlobSizePolicy.Action.FULL)
+                    logger.log(Level.INFO, "File " + version.getPath() + " from commit " + version.getCommitId() +
+                            " has " + blobSize + " bytes, action: " + action);
+                switch (action) {
+                    case SKIP:
+                        features.complete(BlobFeatures.SKIPPED);
+                        break;
+                    case SLOW_LANE:
+                        slowLaneBlobs.add(blobId);
+                        slowLane.execute(() -> extractOnSlowLane(version, blobId, features));
+                        break;
+                    case LEXICAL_ONLY:
+                        lexicalOnly.add(version);
+                        batch.put(version, features);
+                        break;
+                    default:
+                        batch.put(version, features);
+                }
+            });
+
+            // blobs of the syntax cache are neither read nor parsed again
+            if (syntaxCache != null) {
+                Iterator<Map.Entry<Version, CompletableFuture<BlobFeatures>>> iterator = batch.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Version, CompletableFuture<BlobFeatures>> claim = iterator.next();
+                    Version version = claim.getKey();
+                    SyntaxCache.Entry cached = syntaxCache.get(blobIds.get(version));
+                    if (cached == null)
+                        continue;
+                    iterator.remove();
+                    try {
+                        claim.getValue().complete(extractBlobFeatures(version, blobIds.get(version), cached, lexicalOnly.contains(version)));
+                    } catch (RuntimeException e) {
+                        claim.getValue().completeExceptionally(e);
+                    }
+                }
+            }
+
+            git.readSourceCode(batch.keySet(), blobIds::get, new ISourceCodeHandler<Version>() {
+                @Override
+                public void handle(Version version, char[] code) {
+                    try {
+                        claimed.get(version).complete(extractBlobFeatures(version, blobIds.get(version), code, lexicalOnly.contains(version)));
+                    } catch (RuntimeException e) {
+                        claimed.get(version).completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void failed(Version version, IOException e) {
+                    claimed.get(version).completeExceptionally(e);
+                }
+            });
+        } finally {
+            // never leave other partitions waiting for a blob, except for the blobs of the slow lane
+            claimed.forEach((version, features) -> {
+                if (!slowLaneBlobs.contains(blobIds.get(version)))
+                    features.completeExceptionally(new IOException("blob " + blobIds.get(version).getName() + " was not extracted"));
+            });
+        }
+    }
+
+    /**
+     * Read and extract a large blob on the slow lane
+     * @param version the first proccessed version with this blob
+     * @param blobId the blob of the version
+     * @param features the result of the blob
+     */
+    private void extractOnSlowLane(Version version, ObjectId blobId, CompletableFuture<BlobFeatures> features) {
+        try {
+            SyntaxCache.Entry cached = syntaxCache != null ? syntaxCache.get(blobId) : null;
+            if (cached != null)
+                features.complete(extractBlobFeatures(version, blobId, cached, false));
+            else
+                features.complete(extractBlobFeatures(version, blobId, git.getSourceCode(blobId), false));
+        } catch (IOException | RuntimeException e) {
+            features.completeExceptionally(e);
+        } finally {
+            // never leave the deferred versions waiting
+            features.completeExceptionally(new IOException("blob " + blobId.getName() + " was not extracted"));
+        }
+    }
+
+    /**
+     * @param blobId the blob of a version, null if it could not be resolved
+     * @return true if the blob is still being extracted on the slow lane
+     */
+    private boolean isOnSlowLane(ObjectId blobId) {
+        return blobId != null && slowLaneBlobs.contains(blobId) && !blobFeatures.get(blobId).isDone();
+    }
+
     /**
      * Enable the features on all versions
-     * @param commits all commits
      * @param version the proccessed version
-     * @param featureGroups the features to enable
+     * @param blobId the blob of the version, null if it could not be resolved
      * @param log_interval how often should we log
      * @param size the size of the version array (for logging)
      * @param session db session
      */
-    private static void processAllFeatures(List<Commit> commits, Version version, List<IFeatureGroup> featureGroups, int log_interval, int size, Session session) {
+    private void processAllFeatures(Version version, ObjectId blobId, int log_interval, int size, Session session) {
         String path = version.getPath();
         String commitId = version.getCommitId();
-        List<String> nGrams = null;
 
-        if (counter % log_interval == 0) {
-            double prc = (double) counter / size * 100.0;
-            logger.log(Level.INFO, Math.round(prc * 100.0) / 100.0 + "% - processed versions: " + counter);
+        int count = counter.getAndIncrement();
+        if (count % log_interval == 0) {
+            double prc = (double) count / size * 100.0;
+            logger.log(Level.INFO, repository.getName() + ": " + Math.round(prc * 100.0) / 100.0 + "% - processed versions: " + count);
         }
-        counter++;
+
+        //already reported while resolving
+        if (blobId == null)
+            return;
 
         try {
-            char[] code = git.getSourceCode(path, commitId);
-            CompilationUnit ast = AbstractSyntaxTreeUtil.parse(code);
-            //process normal features
-            processFeatures(commits, version, featureGroups, ast, code, session);
+            BlobFeatures features = getBlobFeatures(blobId);
+            //already reported by the size policy
+            if (features == BlobFeatures.SKIPPED)
+                return;
+            //process content features
+            saveFeatures(version, features.getFeatures(), session);
+            //process features per version
+            processHistoryFeatures(version, session);
             //process nGrams
-            if ( cfg.getFeatureGroups().contains("NGramFeatureGroup"))
-                versionNGram.put(version, processNGrams(commits, version, ast, code));
+            if (features.getNGrams() != null)
+                versionNGram.put(version, features.getNGrams());
+        } catch (BudgetExceededException e) {
+            quarantinedVersions.incrementAndGet();
+            quarantine.add(String.join(";", repository.getName(), commitId, path, blobId.getName(),
+                    e.getPhase(), Long.toString(e.getElapsed()), e.getMessage()));
+            logger.log(Level.WARN, "The file " + path + " from commit " + commitId + " is quarantined: " + e.getMessage());
         } catch (IOException e) {
+            failedVersions.incrementAndGet();
             String msg = "There was a problem with the file " + path +
                     " from commit " + commitId + ". Skipping this one.";
             logger.log(Level.WARN, msg, e);
@@ -236,52 +787,203 @@ public class FeatureExtractor {
     }
 
     /**
-     * Process all normal features (except nGrams)
-     * @param commits all commits
+     * Get the content features of a blob. The features of a blob are extracted only once,
+     * all other versions with the same blob get the same result.
+     * @param blobId the blob of the version
+     * @return the content features of the blob
+     * @throws IOException if the blob could not be read
+     */
+    private BlobFeatures getBlobFeatures(ObjectId blobId) throws IOException {
+        try {
+            return blobFeatures.get(blobId).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for blob " + blobId.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Parse a blob and extract all content features and nGrams of it
+     * @param version the first proccessed version with this blob
+     * @param blobId the blob of the version
+     * @param code the source code of the blob
+     * @param lexicalOnly true to scan instead of parse and extract only lexical features
+     * @return the content features of the blob
+     * @throws BudgetExceededException if parsing or extracting the blob exceeded its budget
+     */
+    private BlobFeatures extractBlobFeatures(Version version, ObjectId blobId, char[] code, boolean lexicalOnly) {
+        if (lexicalOnly || !astNeeded) {
+            return watchdog.extract(() -> {
+                LexicalScan scan = LexicalScan.scan(code);
+                if (syntaxCache != null && !syntaxCache.contains(blobId))
+                    putSyntax(blobId, new SyntaxCache.Entry(null, scan, code));
+                return new BlobFeatures(extractLexicalFeatures(version, CommentMask.of(scan, code), code), null);
+            });
+        }
+
+        CompilationUnit ast = watchdog.parse(() -> astCache.get(blobId, code));
+        return watchdog.extract(() -> extractBlobFeatures(version, blobId, ast, code));
+    }
+
+    /**
+     * Extract all content features and nGrams of a blob of the syntax cache.
+     * Only a blob for a group which needs the JDT tree is parsed again, but not read again.
+     * @param version the first proccessed version with this blob
+     * @param blobId the blob of the version
+     * @param cached the syntax of the blob
+     * @param lexicalOnly true to extract only lexical features
+     * @return the content features of the blob
+     * @throws BudgetExceededException if parsing or extracting the blob exceeded its budget
+     */
+    private BlobFeatures extractBlobFeatures(Version version, ObjectId blobId, SyntaxCache.Entry cached, boolean lexicalOnly) {
+        char[] code = cached.getCode();
+        boolean parsed = astNeeded && !lexicalOnly;
+        if (parsed && (jdtTreeNeeded || cached.getTree() == null))
+            return extractBlobFeatures(version, blobId, code, false);
+
+        return watchdog.extract(() -> {
+            Map<String, Double> features = extractLexicalFeatures(version, CommentMask.of(cached.getComments(), code), code);
+            Map<Integer,Map<Integer,Map<String, Integer>>> nGrams = null;
+            if (parsed)
+                nGrams = nGramFeatureGroup.extract(commits, version, cached.getTree(), code);
+            return new BlobFeatures(features, nGrams);
+        });
+    }
+
+    /**
+     * Extract the features of all lexical groups
+     * @param version the first proccessed version with this blob
+     * @param comments the comment mask of the blob
+     * @param code the source code of the blob
+     * @return the lexical features of the blob
+     */
+    private Map<String, Double> extractLexicalFeatures(Version version, CommentMask comments, char[] code) {
+        Map<String, Double> features = new HashMap<String, Double>();
+        for (IFeatureGroup featureGroup : contentFeatureGroups) {
+            if (featureGroup instanceof ILexicalFeatureGroup) {
+                features.putAll(((ILexicalFeatureGroup) featureGroup).extractLexical(commits, version, comments, code));
+                Watchdog.checkDeadline();
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Append the syntax of a blob to the syntax cache, a failed append only costs the parse in the next run
+     * @param blobId the blob
+     * @param entry the syntax of the blob
+     */
+    private static void putSyntax(ObjectId blobId, SyntaxCache.Entry entry) {
+        try {
+            syntaxCache.put(blobId, entry);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Syntax of blob " + blobId.getName() + " could not be cached.", e);
+        }
+    }
+
+    /**
+     * Extract all content features and nGrams of a parsed blob
+     * @param version the first proccessed version with this blob
+     * @param blobId the blob of the version
+     * @param ast abstract syntax tree of the blob
+     * @param code the source code of the blob
+     * @return the content features of the blob
+     */
+    private BlobFeatures extractBlobFeatures(Version version, ObjectId blobId, CompilationUnit ast, char[] code) {
+        Map<String, Double> features = new HashMap<String, Double>();
+        // the ast groups and the nGrams share one walk over the ast, which also fills the index of the ast
+        AbstractSyntaxTreeIndex index = new AbstractSyntaxTreeIndex();
+        List<IAbstractSyntaxTreeListener> listeners = new ArrayList<IAbstractSyntaxTreeListener>();
+        // the budget comes first, so no listener sees a node beyond it
+        listeners.add(watchdog.createWalkBudget());
+        listeners.add(index);
+        List<IFeatureListener> featureListeners = new ArrayList<IFeatureListener>();
+        for (IFeatureGroup featureGroup : contentFeatureGroups) {
+            if (featureGroup instanceof IAbstractSyntaxTreeFeatureGroup)
+                featureListeners.add(((IAbstractSyntaxTreeFeatureGroup) featureGroup).createListener(commits, version, ast, code, index));
+            else if (featureGroup instanceof ILexicalFeatureGroup)
+                features.putAll(((ILexicalFeatureGroup) featureGroup).extractLexical(commits, version, index.getCommentMask(ast, code), code));
+            else
+                features.putAll(featureGroup.extract(commits, version, ast, code));
+            Watchdog.checkDeadline();
+        }
+        listeners.addAll(featureListeners);
+
+        // the nGrams and the syntax cache use the flat ast, which is built in the same walk
+        boolean nGramsEnabled = cfg.getFeatureGroups().contains("NGramFeatureGroup");
+        boolean cacheSyntax = syntaxCache != null && !syntaxCache.containsTree(blobId);
+        FlatAbstractSyntaxTree.Builder flatTreeBuilder = null;
+        if (nGramsEnabled || cacheSyntax) {
+            flatTreeBuilder = new FlatAbstractSyntaxTree.Builder();
+            listeners.add(flatTreeBuilder);
+        }
+
+        AbstractSyntaxTreeWalker.walk(ast, listeners);
+
+        // most groups do their work in getFeatures, the deadline covers it as well as the walk
+        for (IFeatureListener featureListener : featureListeners) {
+            features.putAll(featureListener.getFeatures());
+            Watchdog.checkDeadline();
+        }
+        FlatAbstractSyntaxTree flatTree = flatTreeBuilder != null ? flatTreeBuilder.build() : null;
+        Map<Integer,Map<Integer,Map<String, Integer>>> nGrams = null;
+        if (nGramsEnabled)
+            nGrams = nGramFeatureGroup.extract(commits, version, flatTree, code);
+        if (cacheSyntax)
+            putSyntax(blobId, new SyntaxCache.Entry(flatTree, LexicalScan.of(ast), code));
+
+        return new BlobFeatures(features, nGrams);
+    }
+
+    /**
+     * Process all features per version, the history feature groups share the history index of the repository
      * @param version the proccessed version
-     * @param featureGroups the features to enable
-     * @param ast abtract syntax tree of processed version
-     * @param code code char array of processed version
      * @param session db session
      */
-    private static void processFeatures(List<Commit> commits, Version version, List<IFeatureGroup> featureGroups, CompilationUnit ast, char[] code, Session session) {
-        for (IFeatureGroup featureGroup : featureGroups) {
-            Map<String, Double> features = featureGroup.extract(commits, version, ast, code);
-            Iterator<Map.Entry<String, Double>> it = features.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<String, Double> feature = it.next();
-                String featureId = feature.getKey();
-                Double value = feature.getValue();
-                it.remove(); // avoids a ConcurrentModificationException
-                try {
-                    FeatureValue.addOrUpdateFeatureValue(featureId, version.getId(), value, session);
-                } catch (HibernateError e) {
-                    logger.log(Level.ERROR, "Could not add Features: " + featureId + " with values: " + value, e);
-                }
-            }
+    private void processHistoryFeatures(Version version, Session session) {
+        boolean streamed = false;
+        for (IFeatureGroup featureGroup : historyFeatureGroups) {
+            if (featureGroup instanceof IHistoryFeatureGroup && cfg.getStreamHistoryFeatures())
+                streamed = true;
+            else if (featureGroup instanceof IHistoryFeatureGroup)
+                saveFeatures(version, ((IHistoryFeatureGroup) featureGroup).extract(history, version), session);
+            else
+                saveFeatures(version, featureGroup.extract(commits, version, null, null), session);
         }
+        // the streamed groups get the versions per file after all partitions
+        if (streamed)
+            streamedVersions.add(version);
     }
 
     /**
-     * Process nGrams
-     * @param commits all commits
+     * Save features of a version
      * @param version the proccessed version
-     * @param ast abtract syntax tree of processed version
-     * @param code code char array of processed version
-     * @return returns the nGrams for the version
+     * @param features feature id --> value
+     * @param session db session
      */
-    private static  Map<Integer,Map<Integer,Map<String, Integer>>> processNGrams(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
-        Map<Integer,Map<Integer,Map<String, Integer>>> nGrams = null;
-        NGramFeatureGroup nGramFeatureGroup = new NGramFeatureGroup();
-        nGrams = nGramFeatureGroup.extract(commits, version, ast, code);
-        return nGrams;
+    private static void saveFeatures(Version version, Map<String, Double> features, Session session) {
+        for (Map.Entry<String, Double> feature : features.entrySet()) {
+            String featureId = feature.getKey();
+            Double value = feature.getValue();
+            try {
+                FeatureValue.addOrUpdateFeatureValue(featureId, version.getId(), value, session);
+            } catch (HibernateError e) {
+                logger.log(Level.ERROR, "Could not add Features: " + featureId + " with values: " + value, e);
+            }
+        }
     }
 
     /**
      * Saves all nGrams from the versionNGram nGram map to the database
      * @param versions a list of versions
      */
-    private static void saveNGrams(List<Version> versions) {
+    private void saveNGrams(List<Version> versions) {
 
         final int[] nGramCounter = {1};
 
@@ -308,6 +1010,9 @@ public class FeatureExtractor {
                         logger.log(Level.INFO, Math.round(prc * 100.0) / 100.0 + "% - versions processed: " + nGramCounter[0]);
                     }
                     nGramCounter[0]++;
+                    //skipped, failed or lexical only versions have no nGrams
+                    if (versionNGram.get(version) == null)
+                        return;
                     //for every level in the nGramList without duplicates
                     nGramHead.forEach( (level, map) -> {
                         //for every nGram size
@@ -380,4 +1085,28 @@ public class FeatureExtractor {
     public static Config getCfg() {
         return cfg;
     }
+
+    /**
+     * Content features and nGrams of a blob
+     */
+    private static class BlobFeatures {
+        // a blob the size policy skipped
+        static final BlobFeatures SKIPPED = new BlobFeatures(Collections.<String, Double>emptyMap(), null);
+
+        private final Map<String, Double> features;
+        private final Map<Integer,Map<Integer,Map<String, Integer>>> nGrams;
+
+        BlobFeatures(Map<String, Double> features, Map<Integer,Map<Integer,Map<String, Integer>>> nGrams) {
+            this.features = features;
+            this.nGrams = nGrams;
+        }
+
+        Map<String, Double> getFeatures() {
+            return features;
+        }
+
+        Map<Integer,Map<Integer,Map<String, Integer>>> getNGrams() {
+            return nGrams;
+        }
+    }
 }
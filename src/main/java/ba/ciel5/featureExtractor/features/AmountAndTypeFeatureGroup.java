@@ -2,6 +2,7 @@ package ba.ciel5.featureExtractor.features;
 
 import ba.ciel5.featureExtractor.model.Commit;
 import ba.ciel5.featureExtractor.model.Version;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeIndex;
 import org.eclipse.jdt.core.dom.*;
 
 import java.util.HashMap;
@@ -13,110 +14,110 @@ import java.util.Map;
  *
  * @author tobias.meier
  */
-public class AmountAndTypeFeatureGroup implements IFeatureGroup {
+public class AmountAndTypeFeatureGroup implements IAbstractSyntaxTreeFeatureGroup {
 
     private final String AMOUNTOFSTRING = "AO";
 
     @Override
-    public Map<String, Double> extract(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
-        Map<String, Double> map = new HashMap<String, Double>();
-
-        final Double[] amountOfClasses = {0.0};
-        initializeModifiers(map,"Classes");
-        final Double[] amountOfAbstractClasses = {0.0};
-        final Double[] amountOfEnums = {0.0};
-        initializeModifiers(map,"Enums");
-        final Double[] amountOfInterfaces = {0.0};
-        initializeModifiers(map,"Interfaces");
-
-        final Double[] amountOfMethods = {0.0};
-        initializeModifiers(map,"Methods");
-
-        final Double[] amountOfConstants = {0.0};
-        initializeModifiers(map,"Constants");
-
-        final Double[] amountOfFields = {0.0};
-        initializeModifiers(map,"Fields");
-
-        final Double[] amountOfImports = {0.0};
-        final Double[] amountOfImplementedInterfaces = {0.0};
-
-        final Double[] amountOfLocals = {0.0};
-
-        // AST vistor for getting all operands
-        ASTVisitor visitor = new ASTVisitor() {
-            @Override
-            public void preVisit(ASTNode node) {
-
-                //imports
-                if (node.getNodeType() == ASTNode.IMPORT_DECLARATION)
-                    amountOfImports[0]++;
-
-                //classes and interfaces
-                if (node.getNodeType() == ASTNode.TYPE_DECLARATION) {
-                    TypeDeclaration typeDeclaration = (TypeDeclaration) node;
-                    if (typeDeclaration.isInterface()) {
-                        amountOfInterfaces[0]++;
-                        processModifiers(map, typeDeclaration.getModifiers(), "Interfaces");
-                    } else {
-                        if ((typeDeclaration.getModifiers() & Modifier.ABSTRACT) != 0)
-                            amountOfAbstractClasses[0]++;
-                        else
-                            amountOfClasses[0]++;
-                        processModifiers(map, typeDeclaration.getModifiers(), "Classes");
-                    }
-                    amountOfImplementedInterfaces[0] += typeDeclaration.superInterfaceTypes().size();
-                }
-
-                //enums
-                if (node.getNodeType() == ASTNode.ENUM_DECLARATION) {
-                    EnumDeclaration enumDeclaration = (EnumDeclaration)node;
-                    amountOfEnums[0]++;
-                    processModifiers(map, enumDeclaration.getModifiers(), "Enums");
-                }
+    public IFeatureListener createListener(List<Commit> commits, Version version, CompilationUnit ast, char[] code, AbstractSyntaxTreeIndex index) {
+        return new Listener();
+    }
 
-                //methods
-                if (node.getNodeType() == ASTNode.METHOD_DECLARATION) {
-                    MethodDeclaration methodDeclaration = (MethodDeclaration)node;
-                    amountOfMethods[0]++;
-                    processModifiers(map, methodDeclaration.getModifiers(), "Methods");
+    /**
+     * Counts the declarations of a file
+     */
+    private class Listener implements IFeatureListener {
+        private final Map<String, Double> map = new HashMap<String, Double>();
+
+        private double amountOfClasses = 0.0;
+        private double amountOfAbstractClasses = 0.0;
+        private double amountOfEnums = 0.0;
+        private double amountOfInterfaces = 0.0;
+        private double amountOfMethods = 0.0;
+        private double amountOfConstants = 0.0;
+        private double amountOfFields = 0.0;
+        private double amountOfImports = 0.0;
+        private double amountOfImplementedInterfaces = 0.0;
+        private double amountOfLocals = 0.0;
+
+        Listener() {
+            initializeModifiers(map,"Classes");
+            initializeModifiers(map,"Enums");
+            initializeModifiers(map,"Interfaces");
+            initializeModifiers(map,"Methods");
+            initializeModifiers(map,"Constants");
+            initializeModifiers(map,"Fields");
+        }
+
+        @Override
+        public void enter(ASTNode node) {
+
+            //imports
+            if (node.getNodeType() == ASTNode.IMPORT_DECLARATION)
+                amountOfImports++;
+
+            //classes and interfaces
+            if (node.getNodeType() == ASTNode.TYPE_DECLARATION) {
+                TypeDeclaration typeDeclaration = (TypeDeclaration) node;
+                if (typeDeclaration.isInterface()) {
+                    amountOfInterfaces++;
+                    processModifiers(map, typeDeclaration.getModifiers(), "Interfaces");
+                } else {
+                    if ((typeDeclaration.getModifiers() & Modifier.ABSTRACT) != 0)
+                        amountOfAbstractClasses++;
+                    else
+                        amountOfClasses++;
+                    processModifiers(map, typeDeclaration.getModifiers(), "Classes");
                 }
+                amountOfImplementedInterfaces += typeDeclaration.superInterfaceTypes().size();
+            }
 
-                //field declaration and constants
-                if ( node.getNodeType() == ASTNode.FIELD_DECLARATION) {
-                    FieldDeclaration fieldDeclaration = (FieldDeclaration) node;
-                    if (((fieldDeclaration.getModifiers() & Modifier.FINAL) != 0) &&
-                            (((fieldDeclaration.getModifiers() & Modifier.STATIC) != 0))) {
-                        amountOfConstants[0]++;
-                        processModifiers(map, fieldDeclaration.getModifiers(), "Constants");
-                    } else {
-                        amountOfFields[0]++;
-                        processModifiers(map, fieldDeclaration.getModifiers(), "Fields");
-                    }
-                }
+            //enums
+            if (node.getNodeType() == ASTNode.ENUM_DECLARATION) {
+                EnumDeclaration enumDeclaration = (EnumDeclaration)node;
+                amountOfEnums++;
+                processModifiers(map, enumDeclaration.getModifiers(), "Enums");
+            }
 
-                //locals
-                if ( node.getNodeType() == ASTNode.VARIABLE_DECLARATION_STATEMENT)
-                    amountOfLocals[0]++;
+            //methods
+            if (node.getNodeType() == ASTNode.METHOD_DECLARATION) {
+                MethodDeclaration methodDeclaration = (MethodDeclaration)node;
+                amountOfMethods++;
+                processModifiers(map, methodDeclaration.getModifiers(), "Methods");
+            }
 
-                super.preVisit(node);
+            //field declaration and constants
+            if ( node.getNodeType() == ASTNode.FIELD_DECLARATION) {
+                FieldDeclaration fieldDeclaration = (FieldDeclaration) node;
+                if (((fieldDeclaration.getModifiers() & Modifier.FINAL) != 0) &&
+                        (((fieldDeclaration.getModifiers() & Modifier.STATIC) != 0))) {
+                    amountOfConstants++;
+                    processModifiers(map, fieldDeclaration.getModifiers(), "Constants");
+                } else {
+                    amountOfFields++;
+                    processModifiers(map, fieldDeclaration.getModifiers(), "Fields");
+                }
             }
 
-        };
-        ast.accept(visitor);
-
-        map.put(AMOUNTOFSTRING + "Classes", amountOfClasses[0]);
-        map.put(AMOUNTOFSTRING + "AbstractClasses", amountOfAbstractClasses[0]);
-        map.put(AMOUNTOFSTRING + "Enums", amountOfEnums[0]);
-        map.put(AMOUNTOFSTRING + "Interfaces", amountOfInterfaces[0]);
-        map.put(AMOUNTOFSTRING + "Methods", amountOfMethods[0]);
-        map.put(AMOUNTOFSTRING + "Constants", amountOfConstants[0]);
-        map.put(AMOUNTOFSTRING + "Fields", amountOfFields[0]);
-        map.put(AMOUNTOFSTRING + "Imports", amountOfImports[0]);
-        map.put(AMOUNTOFSTRING + "ImplementedInterfaces", amountOfImplementedInterfaces[0]);
-        map.put(AMOUNTOFSTRING + "Locals", amountOfLocals[0]);
-
-        return map;
+            //locals
+            if ( node.getNodeType() == ASTNode.VARIABLE_DECLARATION_STATEMENT)
+                amountOfLocals++;
+        }
+
+        @Override
+        public Map<String, Double> getFeatures() {
+            map.put(AMOUNTOFSTRING + "Classes", amountOfClasses);
+            map.put(AMOUNTOFSTRING + "AbstractClasses", amountOfAbstractClasses);
+            map.put(AMOUNTOFSTRING + "Enums", amountOfEnums);
+            map.put(AMOUNTOFSTRING + "Interfaces", amountOfInterfaces);
+            map.put(AMOUNTOFSTRING + "Methods", amountOfMethods);
+            map.put(AMOUNTOFSTRING + "Constants", amountOfConstants);
+            map.put(AMOUNTOFSTRING + "Fields", amountOfFields);
+            map.put(AMOUNTOFSTRING + "Imports", amountOfImports);
+            map.put(AMOUNTOFSTRING + "ImplementedInterfaces", amountOfImplementedInterfaces);
+            map.put(AMOUNTOFSTRING + "Locals", amountOfLocals);
+            return map;
+        }
     }
 
     /**
@@ -1,151 +1,87 @@
 package ba.ciel5.featureExtractor.features;
 
 import ba.ciel5.featureExtractor.model.Commit;
-import ba.ciel5.featureExtractor.model.Issue;
 import ba.ciel5.featureExtractor.model.Version;
-import ba.ciel5.featureExtractor.utils.Average;
-import org.eclipse.jdt.core.dom.CompilationUnit;
+import ba.ciel5.featureExtractor.utils.CommitHistoryIndex;
+import ba.ciel5.featureExtractor.utils.CommitHistoryIndex.FileChange;
+import ba.ciel5.featureExtractor.utils.CommitHistoryIndex.FileHistory;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.BiConsumer;
 
 /**
  * Created on 22.04.2016.
  *
  * @author tobias.meier
  */
-public class ChangeRateFeatureGroup implements IFeatureGroup {
+public class ChangeRateFeatureGroup implements IHistoryFeatureGroup {
+
+    private static final int[] DAYS = { 1, 7, 30, 90, 180, 365, 730 };
 
     private enum IssueType {
         BUG, ENHANCEMENT, OTHER
     }
 
-    private enum FileChangeType {
-        ADDED, DELETED, RENAMED, CHANGED
-    }
-
     @Override
-    public Map<String, Double> extract(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
-
-
-        Map<String, Double> map = new HashMap<String, Double>();
-        List<Integer> days = new ArrayList<Integer>(Arrays.asList(1, 7, 30, 90, 180, 365, 730));
-
-        List<Commit> commitResult = commits.stream().filter( c ->
-                c.getId().equals(version.getCommitId())
-        ).collect(Collectors.toList());
-        Commit commit = commitResult.get(0);
-
-        List<Commit> interesstingCommits = getInteresstingCommits(version, commits);
-        List<Commit> olderCommits = getAllOlderCommits(commit, getSortedCommitsByTimestamp(interesstingCommits));
-
-        map.put("DBLC", getDaysBetweenLastCommit(commit, olderCommits));
-
-        // process every feature for at list all days in day array
-        for (Integer day : days) {
-            map.put("NOAL" + day.toString() + "D", getNumberOfAddedLinesForDays(day, commit, olderCommits));
-            map.put("NODL" + day.toString() + "D", getNumberOfDeletedLinesForDays(day, commit, olderCommits));
-            map.put("NOA" + day.toString() + "D", getNumberOfAuthorsForDays(day, commit, olderCommits));
-            map.put("NOB" + day.toString() + "D", getNumberOfIssuesForDays(day, commit, olderCommits, IssueType.BUG.toString()));
-            map.put("NOE" + day.toString() + "D", getNumberOfIssuesForDays(day, commit, olderCommits, IssueType.ENHANCEMENT.toString()));
-            putMinMaxMedMeanToMap(map, getDaysBetweenOlderCommits(day, commit, olderCommits), "DBOC", day);
-
-            //do for every file change type
-            Map<String, List<Double>> numberOfFiles = getNumberOfFilesForOlderCommits(day, commit, olderCommits);
-            Stream.of(FileChangeType.values()).forEach(
-                    type -> putMinMaxMedMeanToMap(map, numberOfFiles.get(type.toString()), "NOF" + type.toString().charAt(0) + "FOC", day)
-            );
-
-            Stream.of(FileChangeType.values()).forEach(
-                            type ->
-                            map.put("NO" + type.toString().charAt(0) + "F" + day.toString() + "D", numberOfFiles.get(type.toString())
-                                    .stream()
-                                    .mapToDouble(value -> value)
-                                    .sum())
-
-            );
-        }
+    public Map<String, Double> extract(CommitHistoryIndex history, Version version) {
+        Commit commit = history.getCommit(version.getCommitId());
+        FileHistory fileHistory = history.getFileHistory(version.getFileId());
+        // the commits of the file older than commit are the first ones of its history
+        int olderCommits = fileHistory.countOlderThan(commit.getTimestamp().getTime());
 
-        return map;
+        List<Window> windows = new ArrayList<Window>();
+        for (int day : DAYS)
+            windows.add(new Window(fileHistory, day));
+        return getFeatures(commit, fileHistory, olderCommits, windows);
     }
 
     /**
-     * filter the commits: Keep only those who have the current version in it
-     * @param version current version
-     * @param commits list of all commits to filter
-     * @return list of commits with the current version in it
+     * Stream the versions of the file in the order of their commits: every window keeps its commits
+     * and only gains the newer commits and drops the expired ones from one version to the next
      */
-    private List<Commit> getInteresstingCommits(Version version, List<Commit> commits) {
-        List<Commit> interesstingCommits = commits.stream().filter(c ->
-            c.getVersions().stream()
-                    .filter( v ->
-                            v.getFileId().equals(version.getFileId())
-                    )
-                    .collect(Collectors.toList())
-                    .size() > 0
-        )
-                .collect(Collectors.toList());
-        return interesstingCommits;
+    @Override
+    public void extractTimeline(CommitHistoryIndex history, List<Version> versions, BiConsumer<Version, Map<String, Double>> features) {
+        if (versions.isEmpty())
+            return;
+        FileHistory fileHistory = history.getFileHistory(versions.get(0).getFileId());
+        List<Version> timeline = new ArrayList<Version>(versions);
+        timeline.sort(Comparator.comparing(v -> history.getCommit(v.getCommitId()).getTimestamp()));
+
+        List<Window> windows = new ArrayList<Window>();
+        for (int day : DAYS)
+            windows.add(new Window(fileHistory, day));
+        int olderCommits = 0;
+        for (Version version : timeline) {
+            Commit commit = history.getCommit(version.getCommitId());
+            long time = commit.getTimestamp().getTime();
+            while (olderCommits < fileHistory.size() && fileHistory.getTimestamp(olderCommits) < time)
+                olderCommits++;
+            features.accept(version, getFeatures(commit, fileHistory, olderCommits, windows));
+        }
     }
 
     /**
-     * return commit list as sorted list
+     * Move the windows to a commit and get all features of it
      *
-     * @param commits commit list
-     * @return sorted commit list
+     * @param commit       the commit of the version
+     * @param fileHistory  history of the file
+     * @param olderCommits number of commits of the file older than commit
+     * @param windows      a window per day in DAYS
+     * @return feature id --> value
      */
-    private List<Commit> getSortedCommitsByTimestamp(List<Commit> commits) {
-        List<Commit> sortedCommits = commits
-                .stream()
-                .sorted((c1, c2) -> c1.getTimestamp().compareTo(c2.getTimestamp()))
-                .collect(Collectors.toList());
-        return sortedCommits;
-    }
+    private Map<String, Double> getFeatures(Commit commit, FileHistory fileHistory, int olderCommits, List<Window> windows) {
+        Map<String, Double> map = new HashMap<String, Double>();
+        long time = commit.getTimestamp().getTime();
 
-    /**
-     * get a list of time difference in milliseconds between commit and every commit in list commits
-     *
-     * @param commit  reference commit
-     * @param commits commit list
-     * @return time difference list
-     */
-    private List<Long> getDateDifference(Commit commit, List<Commit> commits) {
-        List<Long> dateDifference = commits
-                .stream()
-                .map(c -> commit.getTimestamp().getTime() - c.getTimestamp().getTime())
-                .collect(Collectors.toList());
-        return dateDifference;
-    }
+        map.put("DBLC", olderCommits == 0 ? 0.0 : toDays(time - fileHistory.getTimestamp(olderCommits - 1)));
 
-    /**
-     * Filter commits.Get all commits that are older than commit
-     *
-     * @param commit        commit as reference
-     * @param sortedCommits sorted commit list to compare
-     * @return filtered commit list
-     */
-    private List<Commit> getAllOlderCommits(Commit commit, List<Commit> sortedCommits) {
-        List<Commit> olderCommits = sortedCommits
-                .stream()
-                .filter(c -> commit.getTimestamp().getTime() > c.getTimestamp().getTime())
-                .collect(Collectors.toList());
-        return olderCommits;
-    }
+        // process every feature for at list all days in day array
+        for (Window window : windows) {
+            window.moveTo(commit.getTimestamp(), olderCommits);
+            window.putFeatures(map, time);
+        }
 
-    /**
-     * Get commits that are in time range (are newer than the threshold date
-     *
-     * @param dateThreshold
-     * @param sortedCommits sorted commit list
-     * @return
-     */
-    private List<Commit> getCommitsInRange(Long dateThreshold, List<Commit> sortedCommits) {
-        List<Commit> commitsInRange = sortedCommits
-                .stream()
-                .filter(c -> c.getTimestamp().getTime() > dateThreshold)
-                .collect(Collectors.toList());
-        return commitsInRange;
+        return map;
     }
 
     /**
@@ -155,7 +91,7 @@ public class ChangeRateFeatureGroup implements IFeatureGroup {
      * @param days
      * @return
      */
-    private long subtractDaysFromDate(Date date, int days) {
+    private static long subtractDaysFromDate(Date date, int days) {
         Calendar calenderDate = Calendar.getInstance();
         calenderDate.setTime(date);
         calenderDate.add(Calendar.DATE, ((-1) * days));
@@ -163,249 +99,143 @@ public class ChangeRateFeatureGroup implements IFeatureGroup {
     }
 
     /**
-     * Fill map with Min Max Med and Mean of a list of doubles
-     *
-     * @param map     to fill
-     * @param list    list with doubles
-     * @param feature feature name for the name in the map
-     * @param day     days for the name in in the map
-     */
-    private void putMinMaxMedMeanToMap(Map<String, Double> map, List<Double> list, String feature, Integer day) {
-        if (list.size() == 0) {
-            map.put("Min" + feature + day.toString() + "D", 0.0);
-            map.put("Max" + feature + day.toString() + "D", 0.0);
-            map.put("Med" + feature + day.toString() + "D", 0.0);
-            map.put("Mean" + feature + day.toString() + "D", 0.0);
-            return;
-        }
-        map.put("Min" + feature + day.toString() + "D", list.stream().mapToDouble(d -> d).min().getAsDouble());
-        map.put("Max" + feature + day.toString() + "D", list.stream().mapToDouble(d -> d).max().getAsDouble());
-        map.put("Med" + feature + day.toString() + "D", Average.getMedianFromDoubles(list));
-        map.put("Mean" + feature + day.toString() + "D", list.stream().mapToDouble(d -> d).average().getAsDouble());
-    }
-
-    /**
-     * Get number of days between commit and a list of commits
-     *
-     * @param commit
-     * @param olderCommits commits that are older than commit sorted
-     * @return
+     * @param milliseconds a time difference
+     * @return the time difference in days
      */
-    private Double getDaysBetweenLastCommit(Commit commit, List<Commit> olderCommits) {
-
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return 0.0;
-
-        //Get the dateDifference
-        List<Long> dateDifference = getDateDifference(commit, olderCommits);
-
+    private static double toDays(double milliseconds) {
         // /1000 --> to seconds --> /3600 to hours --> /24 --> to days
-        return dateDifference.get(dateDifference.size() - 1) / 1000.0 / 3600.0 / 24.0;
-    }
-
-    /**
-     * Get number of added lines for the last n days
-     *
-     * @param days
-     * @param commit
-     * @param olderCommits commits that are older than commit sorted
-     * @return
-     */
-    private Double getNumberOfAddedLinesForDays(int days, Commit commit, List<Commit> olderCommits) {
-
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return 0.0;
-
-        //Get date threshold
-        Long dateThreshold = subtractDaysFromDate(commit.getTimestamp(), days);
-
-        //Get commits that are newer than the threshold
-        List<Commit> commitsInRange = getCommitsInRange(dateThreshold, olderCommits);
-
-        //Sum all added lines over all versions of all commits and return it
-        Double numberOfAddedLines = 0.0;
-        numberOfAddedLines += commitsInRange
-                .stream()
-                .mapToLong(
-                        c -> c.getVersions()
-                                .stream()
-                                .mapToInt(v -> v.getLinesAdded())
-                                .sum())
-                .sum();
-        return numberOfAddedLines;
+        return milliseconds / 1000.0 / 3600.0 / 24.0;
     }
 
     /**
-     * Get number of deleted lines for the last n days
+     * Fill map with Min Max Med and Mean of a feature
      *
-     * @param days
-     * @param commit
-     * @param olderCommits commits that are older than commit sorted
-     * @return
-     */
-    private Double getNumberOfDeletedLinesForDays(int days, Commit commit, List<Commit> olderCommits) {
-
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return 0.0;
-
-        //Get date threshold
-        Long dateThreshold = subtractDaysFromDate(commit.getTimestamp(), days);
-
-        //Get commits that are newer than the threshold
-        List<Commit> commitsInRange = getCommitsInRange(dateThreshold, olderCommits);
-
-        //Sum all added lines over all versions of all commits and return it
-        Double numberOfDeletedLines = 0.0;
-        numberOfDeletedLines += commitsInRange
-                .stream()
-                .mapToLong(
-                        c -> c.getVersions()
-                                .stream()
-                                .mapToInt(v -> v.getLinesDeleted())
-                                .sum())
-                .sum();
-        return numberOfDeletedLines;
-    }
-
-    /**
-     * Get number of authors for the last n days
-     *
-     * @param days
-     * @param commit
-     * @param olderCommits commits that are older than commit sorted
-     * @return
+     * @param map     to fill
+     * @param feature feature name for the name in the map
+     * @param day     days for the name in in the map
      */
-    private Double getNumberOfAuthorsForDays(int days, Commit commit, List<Commit> olderCommits) {
-
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return 0.0;
-
-        //Get date threshold
-        Long dateThreshold = subtractDaysFromDate(commit.getTimestamp(), days);
-
-        //Get commits that are newer than the threshold
-        List<Commit> commitsInRange = getCommitsInRange(dateThreshold, olderCommits);
-
-        //Sum all added lines over all versions of all commits and return it
-        Map<String, Integer> authors = new HashMap<String, Integer>();
-
-        commitsInRange
-                .forEach(
-                        c -> authors.put(c.getAuthor(), 1)
-                );
-
-        Double numberOfAuthors = 0.0;
-        numberOfAuthors += authors.size();
-
-        return numberOfAuthors;
+    private static void putMinMaxMedMeanToMap(Map<String, Double> map, String feature, int day, double min, double max, double med, double mean) {
+        map.put("Min" + feature + day + "D", min);
+        map.put("Max" + feature + day + "D", max);
+        map.put("Med" + feature + day + "D", med);
+        map.put("Mean" + feature + day + "D", mean);
     }
 
     /**
-     * Get number of issues for the last n days
-     *
-     * @param days
-     * @param commit
-     * @param olderCommits commits that are older than commit sorted
-     * @return
+     * The commits of a file in the last days before a commit, a range of its history which works like a deque:
+     * moving it to a later commit adds the commits in between and drops the ones older than the days.
+     * The sums come from the prefix sums of the history, the window keeps what cannot be summed:
+     * the commits per author and the sorted numbers of changed files.
      */
-    private Double getNumberOfIssuesForDays(int days, Commit commit, List<Commit> olderCommits, String type) {
-
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return 0.0;
-
-        //Get date threshold
-        Long dateThreshold = subtractDaysFromDate(commit.getTimestamp(), days);
-
-        //Get commits that are newer than the threshold
-        List<Commit> commitsInRange = getCommitsInRange(dateThreshold, olderCommits);
-        Double issueCount = 0.0;
-
-        for (Commit c : commitsInRange) {
-            List<Issue> issues = (List<Issue>) c.getIssues();
-            for (Issue i : issues)
-                if (i.getType().equals(type))
-                    issueCount++;
+    private static class Window {
+        private final FileHistory fileHistory;
+        private final int day;
+        // the commits in range are newer than the threshold date, the last ones of the older commits
+        private int from;
+        private int to;
+        private final Map<String, Integer> authors = new HashMap<String, Integer>();
+        // file change --> number of files --> number of commits
+        private final List<TreeMap<Integer, Integer>> files = new ArrayList<TreeMap<Integer, Integer>>();
+
+        Window(FileHistory fileHistory, int day) {
+            this.fileHistory = fileHistory;
+            this.day = day;
+            for (FileChange type : FileChange.values())
+                files.add(new TreeMap<Integer, Integer>());
         }
 
-        return issueCount;
-    }
-
-    /**
-     * Get number of days between older commits
-     *
-     * @param days
-     * @param commit
-     * @param olderCommits commits that are older than commit sorted
-     * @return a sorted list of days between the commit and all older commits
-     */
-    private List<Double> getDaysBetweenOlderCommits(int days, Commit commit, List<Commit> olderCommits) {
-        List<Double> daysBetweenOlderCommits = new ArrayList<Double>();
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return daysBetweenOlderCommits;
-
-        //Get date threshold
-        Long dateThreshold = subtractDaysFromDate(commit.getTimestamp(), days);
-
-        //Get commits that are newer than the threshold
-        List<Commit> commitsInRange = getCommitsInRange(dateThreshold, olderCommits);
-
-        commitsInRange.forEach(
-                c -> daysBetweenOlderCommits.add(
-                        (commit.getTimestamp().getTime() - c.getTimestamp().getTime()) / 1000.0 / 3600.0 / 24.0
-                )
-        );
-
-        Collections.sort(daysBetweenOlderCommits);
-
-        return daysBetweenOlderCommits;
-    }
-
-    /**
-     * get added, deleted, renamed and changed files for a time period
-     *
-     * @param days         time period
-     * @param commit       actual commit
-     * @param olderCommits older commit
-     * @return returns a map with lists
-     */
-    private Map<String, List<Double>> getNumberOfFilesForOlderCommits(int days, Commit commit, List<Commit> olderCommits) {
-        Map<String, List<Double>> map = new HashMap<String, List<Double>>();
-
-        // create hashmap for all file change types
-        Stream.of(FileChangeType.values()).forEach(
-                t -> map.put(t.toString(), new ArrayList<Double>())
-        );
-
-        //There is no commit before the actual
-        if (olderCommits.size() == 0)
-            return map;
-
-        //Get date threshold
-        Long dateThreshold = subtractDaysFromDate(commit.getTimestamp(), days);
+        /**
+         * @param date         date of a commit, not older than the last one
+         * @param olderCommits number of commits of the file older than the commit
+         */
+        void moveTo(Date date, int olderCommits) {
+            long dateThreshold = subtractDaysFromDate(date, day);
+            // an empty window skips the expired commits at once
+            if (from == to) {
+                int first = Math.min(fileHistory.countNotNewerThan(dateThreshold), olderCommits);
+                if (first > to)
+                    from = to = first;
+            }
+            while (to < olderCommits)
+                add(to++);
+            while (from < to && fileHistory.getTimestamp(from) <= dateThreshold)
+                remove(from++);
+            // the threshold of a later date can be earlier around a change of the daylight saving time
+            while (from > 0 && fileHistory.getTimestamp(from - 1) > dateThreshold)
+                add(--from);
+        }
 
-        //Get commits that are newer than the threshold
-        List<Commit> commitsInRange = getCommitsInRange(dateThreshold, olderCommits);
+        /**
+         * Put all features of the window
+         *
+         * @param map  to fill
+         * @param time time of the commit in milliseconds
+         */
+        void putFeatures(Map<String, Double> map, long time) {
+            int count = to - from;
+            map.put("NOAL" + day + "D", (double) fileHistory.getLinesAdded(from, to));
+            map.put("NODL" + day + "D", (double) fileHistory.getLinesDeleted(from, to));
+            map.put("NOA" + day + "D", (double) authors.size());
+            map.put("NOB" + day + "D", (double) fileHistory.getIssues(IssueType.BUG.toString(), from, to));
+            map.put("NOE" + day + "D", (double) fileHistory.getIssues(IssueType.ENHANCEMENT.toString(), from, to));
+
+            // days between the commit and the commits in range, the newest commit is the nearest one
+            if (count == 0) {
+                putMinMaxMedMeanToMap(map, "DBOC", day, 0.0, 0.0, 0.0, 0.0);
+            } else {
+                int middle = to - 1 - count / 2;
+                double median = count % 2 == 0
+                        ? (toDays(time - fileHistory.getTimestamp(middle + 1)) + toDays(time - fileHistory.getTimestamp(middle))) / 2.0
+                        : toDays(time - fileHistory.getTimestamp(middle));
+                putMinMaxMedMeanToMap(map, "DBOC", day,
+                        toDays(time - fileHistory.getTimestamp(to - 1)),
+                        toDays(time - fileHistory.getTimestamp(from)),
+                        median,
+                        toDays(count * time - fileHistory.getTimestampSum(from, to)) / count);
+            }
 
-        commitsInRange.forEach(
-                c -> {
-                    map.get(FileChangeType.ADDED.toString()).add(c.getAddedFilesCount() / 1.0);
-                    map.get(FileChangeType.DELETED.toString()).add(c.getDeletedFilesCount() / 1.0);
-                    map.get(FileChangeType.RENAMED.toString()).add(c.getRenamedFilesCount() / 1.0);
-                    map.get(FileChangeType.CHANGED.toString()).add(c.getChangedFilesCount() / 1.0);
+            //do for every file change type
+            for (FileChange type : FileChange.values()) {
+                long sum = fileHistory.getFiles(type, from, to);
+                map.put("NO" + type.toString().charAt(0) + "F" + day + "D", (double) sum);
+
+                String feature = "NOF" + type.toString().charAt(0) + "FOC";
+                TreeMap<Integer, Integer> counts = files.get(type.ordinal());
+                if (count == 0) {
+                    putMinMaxMedMeanToMap(map, feature, day, 0.0, 0.0, 0.0, 0.0);
+                    continue;
                 }
-        );
+                double median = count % 2 == 0
+                        ? (get(counts, count / 2 - 1) + get(counts, count / 2)) / 2.0
+                        : get(counts, count / 2);
+                putMinMaxMedMeanToMap(map, feature, day, counts.firstKey(), counts.lastKey(), median, sum / (double) count);
+            }
+        }
 
-        //sort all lists in map
-        Stream.of(FileChangeType.values()).forEach(
-                t -> Collections.sort(map.get(t.toString()))
-        );
+        private void add(int commit) {
+            authors.merge(fileHistory.getCommit(commit).getAuthor(), 1, Integer::sum);
+            for (FileChange type : FileChange.values())
+                files.get(type.ordinal()).merge(fileHistory.getFiles(type, commit), 1, Integer::sum);
+        }
 
-        return map;
+        private void remove(int commit) {
+            authors.computeIfPresent(fileHistory.getCommit(commit).getAuthor(), (author, n) -> n == 1 ? null : n - 1);
+            for (FileChange type : FileChange.values())
+                files.get(type.ordinal()).computeIfPresent(fileHistory.getFiles(type, commit), (value, n) -> n == 1 ? null : n - 1);
+        }
+
+        /**
+         * @param counts value --> how often it is in the window
+         * @param index  position of a value if the values were sorted
+         * @return the value
+         */
+        private static int get(TreeMap<Integer, Integer> counts, int index) {
+            for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+                index -= count.getValue();
+                if (index < 0)
+                    return count.getKey();
+            }
+            throw new IndexOutOfBoundsException();
+        }
     }
 }
@@ -0,0 +1,39 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.model.Commit;
+import ba.ciel5.featureExtractor.model.Version;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeIndex;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeWalker;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A content feature group which extracts its features while the abstract syntax tree is walked.
+ * The listeners of all such groups share one walk per file.
+ */
+public interface IAbstractSyntaxTreeFeatureGroup extends IContentFeatureGroup {
+
+    /**
+     * @param commits all commits
+     * @param version the processed version
+     * @param ast abstract syntax tree of the version
+     * @param code code char array of the version
+     * @param index index of the ast, it is filled in the same walk and complete after it
+     * @return a new listener for this file
+     */
+    IFeatureListener createListener(List<Commit> commits, Version version, CompilationUnit ast, char[] code, AbstractSyntaxTreeIndex index);
+
+    /**
+     * Extract the features with a walk of its own
+     */
+    @Override
+    default Map<String, Double> extract(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
+        AbstractSyntaxTreeIndex index = new AbstractSyntaxTreeIndex();
+        IFeatureListener listener = createListener(commits, version, ast, code, index);
+        AbstractSyntaxTreeWalker.walk(ast, Arrays.asList(index, listener));
+        return listener.getFeatures();
+    }
+}
@@ -0,0 +1,10 @@
+package ba.ciel5.featureExtractor.features;
+
+/**
+ * Marks a feature group whose features depend on the file content only.
+ * Such groups are extracted once per blob and the result is shared by every version
+ * with the same content. All other feature groups are extracted for every version and
+ * get neither the ast nor the code of the version.
+ */
+public interface IContentFeatureGroup extends IFeatureGroup {
+}
@@ -0,0 +1,16 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.utils.IAbstractSyntaxTreeListener;
+
+import java.util.Map;
+
+/**
+ * Collects the features of one file while its abstract syntax tree is walked.
+ */
+public interface IFeatureListener extends IAbstractSyntaxTreeListener {
+
+    /**
+     * @return the features, called once after the walk
+     */
+    Map<String, Double> getFeatures();
+}
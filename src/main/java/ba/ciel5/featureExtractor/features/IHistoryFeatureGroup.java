@@ -0,0 +1,44 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.model.Commit;
+import ba.ciel5.featureExtractor.model.Version;
+import ba.ciel5.featureExtractor.utils.CommitHistoryIndex;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A feature group whose features depend on the history of a file.
+ * The history index of the repository is built once per run and shared by all versions.
+ */
+public interface IHistoryFeatureGroup extends IFeatureGroup {
+
+    /**
+     * @param history index of all commits of the repository
+     * @param version the processed version
+     * @return feature id --> value
+     */
+    Map<String, Double> extract(CommitHistoryIndex history, Version version);
+
+    /**
+     * Extract the features of several versions of one file, a group can reuse the work of a version for the next one.
+     * The default extracts every version on its own.
+     * @param history index of all commits of the repository
+     * @param versions versions of the same file
+     * @param features gets the versions with their features (feature id --> value), in any order
+     */
+    default void extractTimeline(CommitHistoryIndex history, List<Version> versions, BiConsumer<Version, Map<String, Double>> features) {
+        for (Version version : versions)
+            features.accept(version, extract(history, version));
+    }
+
+    /**
+     * Extract the features with an index of its own
+     */
+    @Override
+    default Map<String, Double> extract(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
+        return extract(new CommitHistoryIndex(commits), version);
+    }
+}
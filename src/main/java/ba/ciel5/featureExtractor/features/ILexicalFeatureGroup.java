@@ -0,0 +1,33 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.model.Commit;
+import ba.ciel5.featureExtractor.model.Version;
+import ba.ciel5.featureExtractor.utils.CommentMask;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marks a content feature group which only needs the text and the comments of a file.
+ * Very large files and runs with only lexical groups are not parsed, the comments are found by a scan.
+ */
+public interface ILexicalFeatureGroup extends IContentFeatureGroup {
+
+    /**
+     * @param commits all commits
+     * @param version the processed version
+     * @param comments the comment mask of the version
+     * @param code code char array of the version
+     * @return the features
+     */
+    Map<String, Double> extractLexical(List<Commit> commits, Version version, CommentMask comments, char[] code);
+
+    /**
+     * Extract the features with the comments of the ast
+     */
+    @Override
+    default Map<String, Double> extract(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
+        return extractLexical(commits, version, CommentMask.of(ast, code), code);
+    }
+}
@@ -71,6 +71,31 @@ public class Commit {
 
     }
 
+    /**
+     * @param id The SHA-Hash of the commit.
+     * @param repositoryId The ID of the repository.
+     * @param message The commit message.
+     * @param author The name of the author.
+     * @param timestamp The commit time.
+     * @param addedFilesCount Number of added files.
+     * @param deletedFilesCount Number of deleted files.
+     * @param changedFilesCount Number of changed files.
+     * @param renamedFilesCount Number of renamed files.
+     */
+    public Commit(String id, Integer repositoryId, String message, String author, Date timestamp,
+                  Integer addedFilesCount, Integer deletedFilesCount, Integer changedFilesCount, Integer renamedFilesCount) {
+        this.id = id;
+        this.repositoryId = repositoryId;
+        this.message = message;
+        this.author = author;
+        this.timestamp = timestamp;
+        this.addedFilesCount = addedFilesCount;
+        this.deletedFilesCount = deletedFilesCount;
+        this.changedFilesCount = changedFilesCount;
+        this.renamedFilesCount = renamedFilesCount;
+        this.isComplete = true;
+    }
+
     public String getId() {
         return id;
     }
@@ -39,6 +39,17 @@ public class File {
 
     }
 
+    /**
+     * @param id The UUID of the file.
+     * @param repositoryId The ID of the repository.
+     * @param language The programming language, null if unknown.
+     */
+    public File(String id, Integer repositoryId, String language) {
+        this.id = id;
+        this.repositoryId = repositoryId;
+        this.language = language;
+    }
+
     public String getId() {
         return id;
     }
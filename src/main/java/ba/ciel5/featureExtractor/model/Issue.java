@@ -30,6 +30,17 @@ public class Issue {
 
     }
 
+    /**
+     * @param id The ID of the issue.
+     * @param title The title of the issue.
+     * @param type The type of the issue, e.g. BUG or ENHANCEMENT.
+     */
+    public Issue(String id, String title, String type) {
+        this.id = id;
+        this.title = title;
+        this.type = type;
+    }
+
     public String getId() {
         return id;
     }
@@ -37,6 +37,17 @@ public class Repository {
 
     }
 
+    /**
+     * @param id The ID of the repository.
+     * @param name The name of the repository.
+     * @param url The path to the repository root directory.
+     */
+    public Repository(String id, String name, String url) {
+        this.id = id;
+        this.name = name;
+        this.url = url;
+    }
+
     public String getId() {
         return id;
     }
@@ -55,6 +55,28 @@ public class Version {
         this.id = id;
     }
 
+    /**
+     * @param id The UUID of the version.
+     * @param fileId The UUID of the file.
+     * @param commitId The SHA-Hash of the commit.
+     * @param path The path of the file in this commit.
+     * @param linesAdded Number of added lines.
+     * @param linesDeleted Number of deleted lines.
+     * @param fileSize Size of the file in bytes.
+     * @param deleted True if the file was deleted in this commit.
+     */
+    public Version(String id, String fileId, String commitId, String path, Integer linesAdded, Integer linesDeleted,
+                   Integer fileSize, Boolean deleted) {
+        this.id = id;
+        this.fileId = fileId;
+        this.commitId = commitId;
+        this.path = path;
+        this.linesAdded = linesAdded;
+        this.linesDeleted = linesDeleted;
+        this.fileSize = fileSize;
+        this.deleted = deleted;
+    }
+
     public String getId() {
         return id;
     }
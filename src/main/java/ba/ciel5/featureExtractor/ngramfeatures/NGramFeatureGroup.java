@@ -7,6 +7,8 @@ import ba.ciel5.featureExtractor.FeatureExtractor;
 import ba.ciel5.featureExtractor.model.Commit;
 import ba.ciel5.featureExtractor.model.Version;
 import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeUtil;
+import ba.ciel5.featureExtractor.utils.FlatAbstractSyntaxTree;
+import ba.ciel5.featureExtractor.utils.Watchdog;
 import org.eclipse.jdt.core.dom.*;
 
 import java.util.*;
@@ -40,145 +42,95 @@ public class NGramFeatureGroup {
     private final char NGRAMDELIMITER = '_';
     private final char ONEGRAMDELIMITER = '-';
 
+    // the deadline of the extraction is checked every that many nodes or words
+    private static final int DEADLINEINTERVAL = 1024;
+
+    // structural properties the nGrams look at
+    private static final int BLOCKSTATEMENTS = FlatAbstractSyntaxTree.getPropertyId(Block.STATEMENTS_PROPERTY);
+    private static final int TYPEMODIFIERS = FlatAbstractSyntaxTree.getPropertyId(TypeDeclaration.MODIFIERS2_PROPERTY);
+    private static final int TYPEBODYDECLARATIONS = FlatAbstractSyntaxTree.getPropertyId(TypeDeclaration.BODY_DECLARATIONS_PROPERTY);
+    private static final int TYPESUPERCLASS = FlatAbstractSyntaxTree.getPropertyId(TypeDeclaration.SUPERCLASS_TYPE_PROPERTY);
+    private static final int TYPESUPERINTERFACES = FlatAbstractSyntaxTree.getPropertyId(TypeDeclaration.SUPER_INTERFACE_TYPES_PROPERTY);
+    private static final int METHODMODIFIERS = FlatAbstractSyntaxTree.getPropertyId(MethodDeclaration.MODIFIERS2_PROPERTY);
+    private static final int METHODBODY = FlatAbstractSyntaxTree.getPropertyId(MethodDeclaration.BODY_PROPERTY);
+    private static final int METHODRETURNTYPE = FlatAbstractSyntaxTree.getPropertyId(MethodDeclaration.RETURN_TYPE2_PROPERTY);
+    private static final int METHODPARAMETERS = FlatAbstractSyntaxTree.getPropertyId(MethodDeclaration.PARAMETERS_PROPERTY);
+    private static final int CATCHBODY = FlatAbstractSyntaxTree.getPropertyId(CatchClause.BODY_PROPERTY);
+    private static final int DOBODY = FlatAbstractSyntaxTree.getPropertyId(DoStatement.BODY_PROPERTY);
+    private static final int FORBODY = FlatAbstractSyntaxTree.getPropertyId(ForStatement.BODY_PROPERTY);
+    private static final int IFTHEN = FlatAbstractSyntaxTree.getPropertyId(IfStatement.THEN_STATEMENT_PROPERTY);
+    private static final int IFELSE = FlatAbstractSyntaxTree.getPropertyId(IfStatement.ELSE_STATEMENT_PROPERTY);
+    private static final int SWITCHSTATEMENTS = FlatAbstractSyntaxTree.getPropertyId(SwitchStatement.STATEMENTS_PROPERTY);
+    private static final int SYNCHRONIZEDBODY = FlatAbstractSyntaxTree.getPropertyId(SynchronizedStatement.BODY_PROPERTY);
+    private static final int TRYBODY = FlatAbstractSyntaxTree.getPropertyId(TryStatement.BODY_PROPERTY);
+    private static final int WHILEBODY = FlatAbstractSyntaxTree.getPropertyId(WhileStatement.BODY_PROPERTY);
 
     public Map<Integer,Map<Integer,Map<String, Integer>>> extract(List<Commit> commits, Version version, CompilationUnit ast, char[] code) {
-        // Map nGram Level (statement, methods, ..) --> nGram Size (1gram, 2gram) --> nGram, how often it appears
-        Map<Integer,Map<Integer,Map<String, Integer>>>  map = new HashMap<Integer,Map<Integer,Map<String, Integer>>> ();
+        return extract(commits, version, FlatAbstractSyntaxTree.of(ast), code);
+    }
+
+    /**
+     * Collect the nGram words of a file in one pass over its flat ast
+     * @param commits all commits
+     * @param version the processed version
+     * @param tree flat abstract syntax tree of the version
+     * @param code code char array of the version
+     * @return nGram Level (statement, methods, ..) --> nGram Size (1gram, 2gram) --> nGram, how often it appears
+     */
+    public Map<Integer,Map<Integer,Map<String, Integer>>> extract(List<Commit> commits, Version version, FlatAbstractSyntaxTree tree, char[] code) {
         List<String> all = new ArrayList<String>();
         List<String> statements = new ArrayList<String>();
-
-        final List<Integer> statementNodesToInclude = new ArrayList<Integer>(
-                Arrays.asList(
-                        ASTNode.ANONYMOUS_CLASS_DECLARATION,
-                        ASTNode.ASSERT_STATEMENT,
-                        ASTNode.BLOCK,
-                        ASTNode.BLOCK_COMMENT,
-                        ASTNode.BREAK_STATEMENT,
-                        ASTNode.CATCH_CLAUSE,
-                        ASTNode.CLASS_INSTANCE_CREATION,
-                        ASTNode.CONSTRUCTOR_INVOCATION,
-                        ASTNode.CONTINUE_STATEMENT,
-                        ASTNode.DO_STATEMENT,
-                        ASTNode.EMPTY_STATEMENT,
-                        ASTNode.ENHANCED_FOR_STATEMENT,
-                        ASTNode.EXPRESSION_STATEMENT,
-                        ASTNode.FOR_STATEMENT,
-                        ASTNode.IF_STATEMENT,
-                        ASTNode.IMPORT_DECLARATION,
-                        ASTNode.JAVADOC,
-                        ASTNode.LABELED_STATEMENT,
-                        ASTNode.LINE_COMMENT,
-                        ASTNode.MARKER_ANNOTATION,
-                        //ASTNode.METHOD_DECLARATION, //special handling
-                        ASTNode.NORMAL_ANNOTATION,
-                        ASTNode.PACKAGE_DECLARATION,
-                        ASTNode.RETURN_STATEMENT,
-                        ASTNode.SWITCH_STATEMENT,
-                        ASTNode.SYNCHRONIZED_STATEMENT,
-                        ASTNode.THROW_STATEMENT,
-                        ASTNode.TRY_STATEMENT,
-                        ASTNode.TYPE_DECLARATION_STATEMENT,
-                        //ASTNode.TYPE_DECLARATION, //special handling
-                        ASTNode.VARIABLE_DECLARATION_STATEMENT,
-                        ASTNode.WHILE_STATEMENT
-                )
-        );
         List<String> controlStructures = new ArrayList<String>();
-        final List<Integer> controlNodesToInclude = new ArrayList<Integer>(
-                Arrays.asList(
-                        ASTNode.ANONYMOUS_CLASS_DECLARATION,
-                        //ASTNode.BLOCK, //special handling
-                        ASTNode.BREAK_STATEMENT,
-                        ASTNode.CATCH_CLAUSE,
-                        ASTNode.CLASS_INSTANCE_CREATION,
-                        ASTNode.CONTINUE_STATEMENT,
-                        ASTNode.DO_STATEMENT,
-                        ASTNode.FOR_STATEMENT,
-                        ASTNode.IF_STATEMENT,
-                        //ASTNode.METHOD_DECLARATION, //special handling
-                        ASTNode.PACKAGE_DECLARATION,
-                        ASTNode.RETURN_STATEMENT,
-                        ASTNode.SWITCH_STATEMENT,
-                        ASTNode.SYNCHRONIZED_STATEMENT,
-                        ASTNode.THROW_STATEMENT,
-                        ASTNode.TRY_STATEMENT,
-                        //ASTNode.TYPE_DECLARATION, //special handling
-                        ASTNode.WHILE_STATEMENT
-                )
-        );
         List<String> classesAndMethods = new ArrayList<String>();
-        final List<Integer> classesAndMethodsToInclude = new ArrayList<Integer>(
-                Arrays.asList(
-                        //ASTNode.METHOD_DECLARATION, //special handling
-                        ASTNode.PACKAGE_DECLARATION
-                        //ASTNode.TYPE_DECLARATION //special handling
-                )
-        );
-        final List<Integer> controlBlockToInclude = new ArrayList<Integer>(
-                Arrays.asList(
-                        ASTNode.CATCH_CLAUSE,
-                        ASTNode.DO_STATEMENT,
-                        ASTNode.FOR_STATEMENT,
-                        ASTNode.IF_STATEMENT,
-                        ASTNode.SWITCH_STATEMENT,
-                        ASTNode.SYNCHRONIZED_STATEMENT,
-                        ASTNode.TRY_STATEMENT,
-                        ASTNode.WHILE_STATEMENT
-                )
-        );
-
-        ASTVisitor visitor = new ASTVisitor() {
-
-            @Override
-            public void preVisit(ASTNode node) {
-
-                //Compilation Unit - skip it
-                if (node.getParent() == null)
-                    super.preVisit(node);
-                else {
-
-                    //NGrams over whole AST
-                    all.add(String.valueOf(node.getNodeType()));
-
-                    //Block size
-                    if (node.getNodeType() == ASTNode.BLOCK) {
-                        String blockString = generateBlockString((Block) node);
-                        controlStructures.add(blockString);
-                    }
-
-                    //Class or interface generate signature string
-                    if (node.getNodeType() == ASTNode.TYPE_DECLARATION) {
-                        String typeDeclarationString = generateTypeDeclarationString((TypeDeclaration) node);
-                        statements.add(typeDeclarationString);
-                        controlStructures.add(typeDeclarationString);
-                        classesAndMethods.add(typeDeclarationString);
-                    }
-
-                    //Method Generate generate signature string
-                    if (node.getNodeType() == ASTNode.METHOD_DECLARATION) {
-                        String methodDeclarationString = generateMethodDeclarationString((MethodDeclaration) node);
-                        statements.add(methodDeclarationString);
-                        controlStructures.add(methodDeclarationString);
-                        classesAndMethods.add(methodDeclarationString);
-                    }
-
-                    //NGrams over statements
-                    if (statementNodesToInclude.contains(node.getNodeType()))
-                        statements.add(String.valueOf(node.getNodeType()));
-
-                    //NGrams over control structure
-                    if (controlNodesToInclude.contains(node.getNodeType()))
-                        controlStructures.add(generateControlStatementString(node));
-
-                    //NGrams over classes
-                    if (classesAndMethodsToInclude.contains(node.getNodeType()))
-                        classesAndMethods.add(String.valueOf(node.getNodeType()));
-
-                    super.preVisit(node);
-                }
+
+        for (int node = 0; node < tree.size(); node++) {
+            if (node % DEADLINEINTERVAL == 0)
+                Watchdog.checkDeadline();
+            int nodeType = tree.getNodeType(node);
+
+            //Compilation Unit - skip it
+            if (tree.getParent(node) < 0)
+                continue;
+
+            //NGrams over whole AST
+            all.add(String.valueOf(nodeType));
+
+            //Block size
+            if (nodeType == ASTNode.BLOCK) {
+                String blockString = generateBlockString(tree, node);
+                controlStructures.add(blockString);
             }
-        };
-        ast.accept(visitor);
+
+            //Class or interface generate signature string
+            if (nodeType == ASTNode.TYPE_DECLARATION) {
+                String typeDeclarationString = generateTypeDeclarationString(tree, node);
+                statements.add(typeDeclarationString);
+                controlStructures.add(typeDeclarationString);
+                classesAndMethods.add(typeDeclarationString);
+            }
+
+            //Method Generate generate signature string
+            if (nodeType == ASTNode.METHOD_DECLARATION) {
+                String methodDeclarationString = generateMethodDeclarationString(tree, node);
+                statements.add(methodDeclarationString);
+                controlStructures.add(methodDeclarationString);
+                classesAndMethods.add(methodDeclarationString);
+            }
+
+            //NGrams over statements
+            if (AbstractSyntaxTreeUtil.STATEMENTS.contains(nodeType))
+                statements.add(String.valueOf(nodeType));
+
+            //NGrams over control structure
+            if (AbstractSyntaxTreeUtil.CONTROL_STRUCTURES.contains(nodeType))
+                controlStructures.add(generateControlStatementString(tree, node));
+
+            //NGrams over classes
+            if (AbstractSyntaxTreeUtil.DECLARATIONS.contains(nodeType))
+                classesAndMethods.add(String.valueOf(nodeType));
+        }
+
+        Map<Integer,Map<Integer,Map<String, Integer>>>  map = new HashMap<Integer,Map<Integer,Map<String, Integer>>> ();
 
         Integer maxNGramSize = 5;
         if (FeatureExtractor.getCfg() != null)
@@ -211,6 +163,8 @@ public class NGramFeatureGroup {
         //sentence becomes ngrams
         for (ListIterator<String> it = flatCode.listIterator(); it.hasNext(); ) {
             String word = (String) it.next();
+            if (it.previousIndex() % DEADLINEINTERVAL == 0)
+                Watchdog.checkDeadline();
 
             //1- add the word itself
             sb = new StringBuilder(word);
@@ -237,17 +191,19 @@ public class NGramFeatureGroup {
 
     /**
      * Generate string for block with size
+     * @param tree flat ast
      * @param node block
      * @return Block<Size>
      */
-    private String generateBlockString(Block node) {
+    private String generateBlockString(FlatAbstractSyntaxTree tree, int node) {
         StringBuffer blockString = new StringBuffer();
 
-        blockString.append(String.valueOf(node.getNodeType()) + ONEGRAMDELIMITER);
+        blockString.append(String.valueOf(tree.getNodeType(node)) + ONEGRAMDELIMITER);
 
-        if (node.statements().size() < BLOCKSIZEMEDIUMTHRESHOLD)
+        int statementSize = tree.countChildren(node, BLOCKSTATEMENTS);
+        if (statementSize < BLOCKSIZEMEDIUMTHRESHOLD)
             blockString.append(SMALL);
-        else if (node.statements().size() > BLOCKSIZELARGETHRESHOLD)
+        else if (statementSize > BLOCKSIZELARGETHRESHOLD)
             blockString.append(LARGE);
         else
             blockString.append(MEDIUM);
@@ -257,120 +213,118 @@ public class NGramFeatureGroup {
 
     /**
      * get complexity of a control statement (count statements in it)
-     * @param node ASTNode
+     * @param tree flat ast
+     * @param node control statement
      * @return Statement<Complexity>
      */
-    private String generateControlStatementString(ASTNode node) {
+    private String generateControlStatementString(FlatAbstractSyntaxTree tree, int node) {
         StringBuffer controlStatementString = new StringBuffer();
 
-        controlStatementString.append(String.valueOf(node.getNodeType()));
-
-        if (node.getNodeType() == ASTNode.CATCH_CLAUSE) {
-            Integer statementSize = ((CatchClause) node).getBody().statements().size();
-            if (statementSize > COMPLEXTHRESHOLD)
-                controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-            else
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-        } else if (node.getNodeType() == ASTNode.DO_STATEMENT) {
-            if (((DoStatement) node).getBody().getNodeType() == ASTNode.EXPRESSION_STATEMENT)
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-            else if (((DoStatement) node).getBody().getNodeType() == ASTNode.BLOCK) {
-                Integer statementSize = ((Block) ((DoStatement) node).getBody()).statements().size();
-                if (statementSize > COMPLEXTHRESHOLD)
-                    controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-                else
-                    controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-            }
-        } else if (node.getNodeType() == ASTNode.FOR_STATEMENT) {
-            if (((ForStatement) node).getBody().getNodeType() == ASTNode.EXPRESSION_STATEMENT)
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-            else if (((ForStatement) node).getBody().getNodeType() == ASTNode.BLOCK) {
-                Integer statementSize = ((Block) ((ForStatement) node).getBody()).statements().size();
-                if (statementSize > COMPLEXTHRESHOLD)
-                    controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-                else
-                    controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-            }
-        } else if (node.getNodeType() == ASTNode.IF_STATEMENT) {
-            if (((IfStatement) node).getThenStatement().getNodeType() == ASTNode.EXPRESSION_STATEMENT) {
-                if (((IfStatement) node).getElseStatement() != null) {
-                    if (((IfStatement) node).getElseStatement().getNodeType() == ASTNode.EXPRESSION_STATEMENT)
-                        controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-                    else if (((IfStatement) node).getElseStatement().getNodeType() == ASTNode.BLOCK) {
-                        Integer statementElseSize = ((Block) ((IfStatement) node).getElseStatement()).statements().size();
-                        if (statementElseSize > COMPLEXTHRESHOLD)
-                            controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-                        else
-                            controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-                    }
-                }
-            } else if (((IfStatement) node).getThenStatement().getNodeType() == ASTNode.BLOCK) {
-                Integer statementThenSize = ((Block) ((IfStatement) node).getThenStatement()).statements().size();
+        int nodeType = tree.getNodeType(node);
+        controlStatementString.append(String.valueOf(nodeType));
+
+        if (nodeType == ASTNode.CATCH_CLAUSE) {
+            appendComplexity(controlStatementString, countStatements(tree, tree.getChild(node, CATCHBODY)));
+        } else if (nodeType == ASTNode.DO_STATEMENT) {
+            appendBodyComplexity(controlStatementString, tree, tree.getChild(node, DOBODY));
+        } else if (nodeType == ASTNode.FOR_STATEMENT) {
+            appendBodyComplexity(controlStatementString, tree, tree.getChild(node, FORBODY));
+        } else if (nodeType == ASTNode.IF_STATEMENT) {
+            int thenStatement = tree.getChild(node, IFTHEN);
+            int elseStatement = tree.getChild(node, IFELSE);
+            if (tree.getNodeType(thenStatement) == ASTNode.EXPRESSION_STATEMENT) {
+                if (elseStatement >= 0)
+                    appendBodyComplexity(controlStatementString, tree, elseStatement);
+            } else if (tree.getNodeType(thenStatement) == ASTNode.BLOCK) {
+                Integer statementThenSize = countStatements(tree, thenStatement);
                 Integer statementElseSize = 0;
-                if (((IfStatement) node).getElseStatement() != null) {
-                    if (((IfStatement) node).getElseStatement().getNodeType() == ASTNode.EXPRESSION_STATEMENT)
+                if (elseStatement >= 0) {
+                    if (tree.getNodeType(elseStatement) == ASTNode.EXPRESSION_STATEMENT)
                         statementElseSize = 1;
-                    else if (((IfStatement) node).getElseStatement().getNodeType() == ASTNode.BLOCK)
-                        statementElseSize = ((Block) ((IfStatement) node).getElseStatement()).statements().size();
+                    else if (tree.getNodeType(elseStatement) == ASTNode.BLOCK)
+                        statementElseSize = countStatements(tree, elseStatement);
                 }
-                if ((statementThenSize + statementElseSize) > COMPLEXTHRESHOLD)
-                    controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-                else
-                    controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-            }
-        } else if (node.getNodeType() == ASTNode.SWITCH_STATEMENT) {
-            Integer statementSize = ((SwitchStatement) node).statements().size();
-            if (statementSize > COMPLEXTHRESHOLD)
-                controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-            else
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-        } else if (node.getNodeType() == ASTNode.SYNCHRONIZED_STATEMENT) {
-            Integer statementSize = ((SynchronizedStatement) node).getBody().statements().size();
-            if (statementSize > COMPLEXTHRESHOLD)
-                controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-            else
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-        } else if (node.getNodeType() == ASTNode.TRY_STATEMENT) {
-            Integer statementSize = ((TryStatement) node).getBody().statements().size();
-            if (statementSize > COMPLEXTHRESHOLD)
-                controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-            else
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-        } else if (node.getNodeType() == ASTNode.WHILE_STATEMENT) {
-            if (((WhileStatement) node).getBody().getNodeType() == ASTNode.EXPRESSION_STATEMENT)
-                controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
-            else if (((WhileStatement) node).getBody().getNodeType() == ASTNode.BLOCK)  {
-                Integer statementSize = ((Block) ((WhileStatement) node).getBody()).statements().size();
-                if (statementSize > COMPLEXTHRESHOLD)
-                    controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
-                else
-                    controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
+                appendComplexity(controlStatementString, statementThenSize + statementElseSize);
             }
+        } else if (nodeType == ASTNode.SWITCH_STATEMENT) {
+            appendComplexity(controlStatementString, tree.countChildren(node, SWITCHSTATEMENTS));
+        } else if (nodeType == ASTNode.SYNCHRONIZED_STATEMENT) {
+            appendComplexity(controlStatementString, countStatements(tree, tree.getChild(node, SYNCHRONIZEDBODY)));
+        } else if (nodeType == ASTNode.TRY_STATEMENT) {
+            appendComplexity(controlStatementString, countStatements(tree, tree.getChild(node, TRYBODY)));
+        } else if (nodeType == ASTNode.WHILE_STATEMENT) {
+            appendBodyComplexity(controlStatementString, tree, tree.getChild(node, WHILEBODY));
         }
         return controlStatementString.toString();
     }
 
+    /**
+     * append the complexity of the body of a loop: an expression is simple, a block depends on its statements
+     * @param controlStatementString the string to append to
+     * @param tree flat ast
+     * @param body body statement
+     */
+    private void appendBodyComplexity(StringBuffer controlStatementString, FlatAbstractSyntaxTree tree, int body) {
+        if (tree.getNodeType(body) == ASTNode.EXPRESSION_STATEMENT)
+            controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
+        else if (tree.getNodeType(body) == ASTNode.BLOCK)
+            appendComplexity(controlStatementString, countStatements(tree, body));
+    }
+
+    /**
+     * @param controlStatementString the string to append to
+     * @param statementSize number of statements of a control statement
+     */
+    private void appendComplexity(StringBuffer controlStatementString, int statementSize) {
+        if (statementSize > COMPLEXTHRESHOLD)
+            controlStatementString.append(ONEGRAMDELIMITER + COMPLEX);
+        else
+            controlStatementString.append(ONEGRAMDELIMITER + SIMPLE);
+    }
+
+    /**
+     * @param tree flat ast
+     * @param block a block
+     * @return number of statements of the block
+     */
+    private int countStatements(FlatAbstractSyntaxTree tree, int block) {
+        return tree.countChildren(block, BLOCKSTATEMENTS);
+    }
+
+    /**
+     * append the node types of the modifiers and single member annotations of a declaration
+     * @param string the string to append to
+     * @param tree flat ast
+     * @param node declaration
+     * @param modifiers property of the modifiers
+     */
+    private void appendModifiers(StringBuffer string, FlatAbstractSyntaxTree tree, int node, int modifiers) {
+        for (int child = tree.getFirstChild(node); child >= 0; child = tree.getNextSibling(child)) {
+            if (tree.getLocation(child) != modifiers)
+                continue;
+            int nodeType = tree.getNodeType(child);
+            if (nodeType == ASTNode.MODIFIER || nodeType == ASTNode.SINGLE_MEMBER_ANNOTATION)
+                string.append(String.valueOf(nodeType) + ONEGRAMDELIMITER);
+        }
+    }
+
     /**
      * generate string for classes and interfaces
-     * @param typeDeclaration class or interface
+     * @param tree flat ast
+     * @param node class or interface
      * @return class or interface string
      */
-    private String generateTypeDeclarationString(TypeDeclaration typeDeclaration) {
+    private String generateTypeDeclarationString(FlatAbstractSyntaxTree tree, int node) {
         StringBuffer typeString = new StringBuffer();
 
-        Integer methodCount = typeDeclaration.getMethods().length;
+        Integer methodCount = tree.countChildren(node, TYPEBODYDECLARATIONS, ASTNode.METHOD_DECLARATION);
 
-        if (typeDeclaration.isInterface())
+        if (tree.isInterface(node))
             typeString.append(INTERFACENAME + ONEGRAMDELIMITER);
         else
             typeString.append(CLASSNAME + ONEGRAMDELIMITER);
 
-        typeDeclaration.modifiers().forEach(m -> {
-            if ( m instanceof Modifier)
-                typeString.append(String.valueOf(((Modifier) m).getNodeType()) + ONEGRAMDELIMITER);
-            else if ( m instanceof SingleMemberAnnotation )
-                typeString.append(String.valueOf(((SingleMemberAnnotation) m).getNodeType()) + ONEGRAMDELIMITER);
-        });
+        appendModifiers(typeString, tree, node, TYPEMODIFIERS);
 
         if ( methodCount > METHODCOUNTMEDIUMTHRESHOLD )
             typeString.append(MEDIUM);
@@ -379,8 +333,11 @@ public class NGramFeatureGroup {
         else
             typeString.append(SMALL);
 
-        AbstractSyntaxTreeUtil.getSuperInterfaces(typeDeclaration).forEach(i -> typeString.append(ONEGRAMDELIMITER + IMPLEMENTS));
-        if (AbstractSyntaxTreeUtil.getSuperClass(typeDeclaration) != null) {
+        // like AbstractSyntaxTreeUtil.getSuperInterfaces only simple types count
+        int superInterfaces = tree.countChildren(node, TYPESUPERINTERFACES, ASTNode.SIMPLE_TYPE);
+        for (int i = 0; i < superInterfaces; i++)
+            typeString.append(ONEGRAMDELIMITER + IMPLEMENTS);
+        if (tree.getChild(node, TYPESUPERCLASS) >= 0) {
             typeString.append(ONEGRAMDELIMITER + EXTENDS);
         }
         return typeString.toString();
@@ -388,25 +345,21 @@ public class NGramFeatureGroup {
 
     /**
      * get method declaration string
-     * @param methodDeclaration method
+     * @param tree flat ast
+     * @param node method
      * @return method string
      */
-    private String generateMethodDeclarationString(MethodDeclaration methodDeclaration) {
+    private String generateMethodDeclarationString(FlatAbstractSyntaxTree tree, int node) {
         StringBuffer methodString = new StringBuffer();
 
         Integer statementCount = 0;
-        if ( methodDeclaration.getBody() != null )
-            statementCount = methodDeclaration.getBody().statements().size();
+        int body = tree.getChild(node, METHODBODY);
+        if ( body >= 0 )
+            statementCount = countStatements(tree, body);
 
         methodString.append(METHOD + ONEGRAMDELIMITER);
 
-        methodDeclaration.modifiers().forEach(m -> {
-            if ( m instanceof Modifier) {
-                methodString.append(String.valueOf(((Modifier) m).getNodeType()) + ONEGRAMDELIMITER);
-            }
-            else if ( m instanceof SingleMemberAnnotation )
-                methodString.append(String.valueOf(((SingleMemberAnnotation) m).getNodeType()) + ONEGRAMDELIMITER);
-        });
+        appendModifiers(methodString, tree, node, METHODMODIFIERS);
 
         if ( statementCount > BLOCKSIZEMEDIUMTHRESHOLD )
             methodString.append(MEDIUM);
@@ -415,14 +368,14 @@ public class NGramFeatureGroup {
         else
             methodString.append(SMALL);
 
-        if (methodDeclaration.getReturnType2() != null)
-            methodString.append(ONEGRAMDELIMITER + String.valueOf(methodDeclaration.getReturnType2().getNodeType()));
+        int returnType = tree.getChild(node, METHODRETURNTYPE);
+        if (returnType >= 0)
+            methodString.append(ONEGRAMDELIMITER + String.valueOf(tree.getNodeType(returnType)));
 
-        final Integer[] amountOfParameters = { 0 };
-        methodDeclaration.parameters().forEach(p -> amountOfParameters[0]++);
-        if ( amountOfParameters[0] > AMOUNTOFPARAMETERMEDIUMTHRESHOLD )
+        int amountOfParameters = tree.countChildren(node, METHODPARAMETERS);
+        if ( amountOfParameters > AMOUNTOFPARAMETERMEDIUMTHRESHOLD )
             methodString.append(ONEGRAMDELIMITER + MEDIUM);
-        else if ( amountOfParameters[0] > AMOUNTOFPARAMETERLARGETHRESHOLD )
+        else if ( amountOfParameters > AMOUNTOFPARAMETERLARGETHRESHOLD )
             methodString.append(ONEGRAMDELIMITER + LARGE);
         else
             methodString.append(ONEGRAMDELIMITER + SMALL);
@@ -457,6 +410,7 @@ public class NGramFeatureGroup {
      * @param level the level
      */
     private void putNGramListsToMap(Map<Integer,Map<Integer,Map<String, Integer>>>  map, List<String> ngrams, int level) {
+        Watchdog.checkDeadline();
         map.put(level,new HashMap<Integer,Map<String, Integer>>());
 
         ngrams.forEach( n -> {
@@ -0,0 +1,328 @@
+package ba.ciel5.featureExtractor.repository;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the blob of every changed file in every commit: (commit, path) --> blob.
+ * A file is changed in a commit if its blob differs from at least one parent, in a root commit every file is changed.
+ * Files which did not change in a commit are not in the index.
+ *
+ * The index is built in one walk over the history and stored in sorted arrays:
+ * - the commits are sorted raw ids, every commit has a range of entries
+ * - the paths are a sorted pool, the entries of a commit are sorted by their path
+ * - the blobs are raw ids, parallel to the entries
+ * An index is immutable and safe to use from several threads.
+ */
+public class BlobIndex {
+
+    private static final int MAGIC = 0x46454249;
+    private static final int FORMAT = 1;
+
+    // ref tips the index was built from, sorted raw ids
+    private final byte[] tips;
+    // sorted raw ids of all commits
+    private final byte[] commits;
+    // entries of commit i are commitStart[i] until commitStart[i + 1]
+    private final int[] commitStart;
+    // sorted pool of all paths
+    private final String[] paths;
+    // path of every entry, index into paths
+    private final int[] entryPaths;
+    // raw blob id of every entry
+    private final byte[] entryBlobs;
+
+    private BlobIndex(byte[] tips, byte[] commits, int[] commitStart, String[] paths, int[] entryPaths, byte[] entryBlobs) {
+        this.tips = tips;
+        this.commits = commits;
+        this.commitStart = commitStart;
+        this.paths = paths;
+        this.entryPaths = entryPaths;
+        this.entryBlobs = entryBlobs;
+    }
+
+    /**
+     * Walk all commits reachable from a ref once and index their changed files
+     *
+     * @param repository the repository
+     * @return the index
+     * @throws IOException if the history could not be read
+     */
+    public static BlobIndex build(Repository repository) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        // every path is stored only once
+        Map<String, String> pathPool = new HashMap<String, String>();
+        Collection<ObjectId> tips = getTips(repository);
+
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setRetainBody(false);
+            for (ObjectId tip : tips)
+                revWalk.markStart(revWalk.parseCommit(tip));
+
+            for (RevCommit commit : revWalk) {
+                ObjectId commitId = commit.copy();
+                try (TreeWalk treeWalk = new TreeWalk(revWalk.getObjectReader())) {
+                    treeWalk.setRecursive(true);
+                    treeWalk.addTree(commit.getTree());
+                    for (RevCommit parent : commit.getParents())
+                        treeWalk.addTree(revWalk.parseCommit(parent).getTree());
+                    if (commit.getParentCount() > 0)
+                        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+
+                    while (treeWalk.next()) {
+                        // deleted files and submodules have no blob in this commit
+                        if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+                            continue;
+                        String path = pathPool.computeIfAbsent(treeWalk.getPathString(), p -> p);
+                        entries.add(new Entry(commitId, path, treeWalk.getObjectId(0)));
+                    }
+                }
+            }
+        }
+
+        return pack(tips, entries);
+    }
+
+    /**
+     * Read an index written by write
+     *
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file could not be read or is no index
+     */
+    public static BlobIndex read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT)
+                throw new IOException(file + " is no blob index of this version");
+            byte[] tips = new byte[in.readInt()];
+            in.readFully(tips);
+            byte[] commits = new byte[in.readInt()];
+            in.readFully(commits);
+            int[] commitStart = new int[in.readInt()];
+            for (int i = 0; i < commitStart.length; i++)
+                commitStart[i] = in.readInt();
+            String[] paths = new String[in.readInt()];
+            for (int i = 0; i < paths.length; i++)
+                paths[i] = in.readUTF();
+            int[] entryPaths = new int[in.readInt()];
+            for (int i = 0; i < entryPaths.length; i++)
+                entryPaths[i] = in.readInt();
+            byte[] entryBlobs = new byte[in.readInt()];
+            in.readFully(entryBlobs);
+            return new BlobIndex(tips, commits, commitStart, paths, entryPaths, entryBlobs);
+        }
+    }
+
+    /**
+     * Write the index to a file. The file is replaced at once, readers never see a partial index.
+     *
+     * @param file the index file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(tips.length);
+            out.write(tips);
+            out.writeInt(commits.length);
+            out.write(commits);
+            out.writeInt(commitStart.length);
+            for (int start : commitStart)
+                out.writeInt(start);
+            out.writeInt(paths.length);
+            for (String path : paths)
+                out.writeUTF(path);
+            out.writeInt(entryPaths.length);
+            for (int path : entryPaths)
+                out.writeInt(path);
+            out.writeInt(entryBlobs.length);
+            out.write(entryBlobs);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param repository the repository
+     * @return true if the index was built from the current refs of the repository
+     */
+    public boolean isCurrent(Repository repository) {
+        return Arrays.equals(tips, toRaw(getTips(repository)));
+    }
+
+    /**
+     * @param commit a commit
+     * @param path path of a file
+     * @return the blob of the file, null if the file did not change in the commit or the commit is unknown
+     */
+    public ObjectId lookup(AnyObjectId commit, String path) {
+        int pathIndex = Arrays.binarySearch(paths, path);
+        if (pathIndex < 0)
+            return null;
+        int commitIndex = find(commits, commit);
+        if (commitIndex < 0)
+            return null;
+        int entry = Arrays.binarySearch(entryPaths, commitStart[commitIndex], commitStart[commitIndex + 1], pathIndex);
+        if (entry < 0)
+            return null;
+        return ObjectId.fromRaw(entryBlobs, entry * Constants.OBJECT_ID_LENGTH);
+    }
+
+    /**
+     * @return number of indexed commits
+     */
+    public int getCommitCount() {
+        return commitStart.length - 1;
+    }
+
+    /**
+     * @return number of indexed (commit, path) pairs
+     */
+    public int getEntryCount() {
+        return entryPaths.length;
+    }
+
+    /**
+     * Sort the entries and store them in arrays
+     *
+     * @param tips ref tips of the walk
+     * @param entries all entries of the walk
+     * @return the index
+     */
+    private static BlobIndex pack(Collection<ObjectId> tips, List<Entry> entries) {
+        String[] paths = new TreeSet<String>(entries.stream().map(e -> e.path).collect(Collectors.toSet()))
+                .toArray(new String[0]);
+        Map<String, Integer> pathIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < paths.length; i++)
+            pathIndex.put(paths[i], i);
+
+        entries.sort(Comparator.<Entry, ObjectId>comparing(e -> e.commit).thenComparingInt(e -> pathIndex.get(e.path)));
+
+        int commitCount = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (i == 0 || !entries.get(i).commit.equals(entries.get(i - 1).commit))
+                commitCount++;
+        }
+
+        byte[] commits = new byte[commitCount * Constants.OBJECT_ID_LENGTH];
+        int[] commitStart = new int[commitCount + 1];
+        int[] entryPaths = new int[entries.size()];
+        byte[] entryBlobs = new byte[entries.size() * Constants.OBJECT_ID_LENGTH];
+        int commit = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (i == 0 || !entry.commit.equals(entries.get(i - 1).commit)) {
+                commit++;
+                entry.commit.copyRawTo(commits, commit * Constants.OBJECT_ID_LENGTH);
+                commitStart[commit] = i;
+            }
+            entryPaths[i] = pathIndex.get(entry.path);
+            entry.blob.copyRawTo(entryBlobs, i * Constants.OBJECT_ID_LENGTH);
+        }
+        commitStart[commitCount] = entries.size();
+
+        return new BlobIndex(toRaw(tips), commits, commitStart, paths, entryPaths, entryBlobs);
+    }
+
+    /**
+     * @param repository the repository
+     * @return the commits of HEAD and all refs, sorted
+     */
+    private static Collection<ObjectId> getTips(Repository repository) {
+        TreeSet<ObjectId> tips = new TreeSet<ObjectId>();
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            for (Ref ref : repository.getAllRefs().values()) {
+                if (ref.getObjectId() == null)
+                    continue;
+                try {
+                    tips.add(revWalk.parseCommit(ref.getObjectId()).copy());
+                } catch (IncorrectObjectTypeException e) {
+                    // a tag of a tree or blob has no history
+                } catch (IOException e) {
+                    // a broken ref has no history
+                }
+            }
+        }
+        return tips;
+    }
+
+    /**
+     * @param ids sorted ids
+     * @return the raw ids one after the other
+     */
+    private static byte[] toRaw(Collection<ObjectId> ids) {
+        byte[] raw = new byte[ids.size() * Constants.OBJECT_ID_LENGTH];
+        int i = 0;
+        for (ObjectId id : ids)
+            id.copyRawTo(raw, Constants.OBJECT_ID_LENGTH * i++);
+        return raw;
+    }
+
+    /**
+     * Binary search of an id in sorted raw ids
+     *
+     * @param raw sorted raw ids
+     * @param id the id
+     * @return position of the id, -1 if not found
+     */
+    private static int find(byte[] raw, AnyObjectId id) {
+        int low = 0;
+        int high = raw.length / Constants.OBJECT_ID_LENGTH - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = id.compareTo(raw, mid * Constants.OBJECT_ID_LENGTH);
+            if (compare == 0)
+                return mid;
+            if (compare > 0)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * A changed file of a commit while the index is built
+     */
+    private static class Entry {
+        private final ObjectId commit;
+        private final String path;
+        private final ObjectId blob;
+
+        Entry(ObjectId commit, String path, ObjectId blob) {
+            this.commit = commit;
+            this.path = path;
+            this.blob = blob;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ba.ciel5.featureExtractor.repository;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides by the size of a blob how it is processed, before the blob is loaded.
+ * A threshold of 0 disables the action. The policy counts how often every action was taken.
+ */
+public class BlobSizePolicy {
+
+    public enum Action {
+        // parse and extract all features
+        FULL,
+        // extract all features on the slow lane, outside of the partition workers
+        SLOW_LANE,
+        // extract only the lexical features
+        LEXICAL_ONLY,
+        // do not extract any content features
+        SKIP
+    }
+
+    private final long slowLaneSize;
+    private final long lexicalOnlySize;
+    private final long maxSize;
+    private final Map<Action, AtomicLong> counts;
+
+    /**
+     * @param slowLaneSize blobs larger than this are processed on the slow lane
+     * @param lexicalOnlySize blobs larger than this get only lexical features
+     * @param maxSize blobs larger than this are skipped
+     */
+    public BlobSizePolicy(long slowLaneSize, long lexicalOnlySize, long maxSize) {
+        this.slowLaneSize = slowLaneSize;
+        this.lexicalOnlySize = lexicalOnlySize;
+        this.maxSize = maxSize;
+
+        Map<Action, AtomicLong> counts = new EnumMap<Action, AtomicLong>(Action.class);
+        for (Action action : Action.values())
+            counts.put(action, new AtomicLong());
+        this.counts = Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return a policy which processes every blob fully
+     */
+    public static BlobSizePolicy processAll() {
+        return new BlobSizePolicy(0, 0, 0);
+    }
+
+    /**
+     * Decide how a blob is processed and count the decision
+     *
+     * @param size size of the blob in bytes
+     * @return the action to take
+     */
+    public Action decide(long size) {
+        Action action = Action.FULL;
+        if (maxSize > 0 && size > maxSize)
+            action = Action.SKIP;
+        else if (lexicalOnlySize > 0 && size > lexicalOnlySize)
+            action = Action.LEXICAL_ONLY;
+        else if (slowLaneSize > 0 && size > slowLaneSize)
+            action = Action.SLOW_LANE;
+        counts.get(action).incrementAndGet();
+        return action;
+    }
+
+    /**
+     * @param action an action
+     * @return how many blobs got this action so far
+     */
+    public long getCount(Action action) {
+        return counts.get(action).get();
+    }
+}
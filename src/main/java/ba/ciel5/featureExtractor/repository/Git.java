@@ -1,21 +1,42 @@
 package ba.ciel5.featureExtractor.repository;
 
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.AsyncObjectLoaderQueue;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.TreeWalk;
-import org.apache.commons.io.IOUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 
 /**
@@ -23,11 +44,55 @@ import java.util.Map;
  * Handles git repository
  * - initialize
  * - read source code of files
+ *
+ * The reader is safe to use from several threads at once. Every thread reads through its own
+ * ObjectReader, which is created on first use and reused for all further reads of that thread.
+ * The only state shared between threads is the synchronized commit tree cache.
  * @author tobias.meier
  */
 public class Git {
 
+    // how many commit trees are remembered for versions of the same commit
+    private static final int COMMITTREECACHESIZE = 256;
+    // how many blobs a batch read loads ahead of the consumer
+    private static final int PREFETCHSIZE = 32;
+    // name of the persisted blob index in the git directory
+    private static final String BLOBINDEXFILE = "featureExtractor-blob.idx";
+    // loader threads of the batch reads of all repositories, a thread is reused by the next batch read
+    // and is a daemon, so an unfinished read does not keep the JVM alive
+    private static final AtomicInteger PREFETCHTHREADS = new AtomicInteger();
+    private static final ExecutorService PREFETCHEXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "blob-prefetch-" + PREFETCHTHREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private Repository repository;
+    // commit SHA --> root tree of the commit (least recently used entries are dropped)
+    private final Map<String, ObjectId> commitTrees = Collections.synchronizedMap(
+            new LinkedHashMap<String, ObjectId>(COMMITTREECACHESIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ObjectId> eldest) {
+                    return size() > COMMITTREECACHESIZE;
+                }
+            });
+    // object reader of the calling thread
+    private final ThreadLocal<ObjectReader> readers = ThreadLocal.withInitial(this::openReader);
+    // object readers of all threads, released when the repository is closed
+    private final Queue<ObjectReader> openReaders = new ConcurrentLinkedQueue<ObjectReader>();
+    // decoder of the calling thread
+    private final ThreadLocal<SourceCodeDecoder> decoders = ThreadLocal.withInitial(SourceCodeDecoder::new);
+    // statistics of the read path
+    private final AtomicLong treeCacheHits = new AtomicLong();
+    private final AtomicLong treeCacheMisses = new AtomicLong();
+    private final AtomicLong blobsRead = new AtomicLong();
+    private final AtomicLong largeBlobsRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong blobIndexHits = new AtomicLong();
+    // (commit, path) --> blob of all changed files, null if not loaded
+    private volatile BlobIndex blobIndex;
+    // how blobs are processed depending on their size
+    private BlobSizePolicy sizePolicy = BlobSizePolicy.processAll();
 
     /**
      * Initialize git ba.ciel5.featureExtractor.repository
@@ -55,55 +120,402 @@ public class Git {
      * @see IOException
      */
     public char[] getSourceCode(String path, String commitSHA) throws IOException {
-        char[] code = null;
+        return getSourceCode(getBlobId(path, commitSHA));
+    }
 
-        Map<String, ObjectId> files = getFiles(commitSHA);
+    /**
+     * Reads the source code of a blob
+     *
+     * @param blobId Object-ID of the blob, see getBlobId
+     * @return source code of the blob
+     * @throws IOException If the blob could not be read
+     */
+    public char[] getSourceCode(ObjectId blobId) throws IOException {
+        return decode(getReader().open(blobId), decoders.get());
+    }
 
-        if (!files.containsKey(path))
-            throw new FileNotFoundException("file " + path + " not found in commit " + commitSHA);
+    /**
+     * Reads the size of a blob without loading its content
+     *
+     * @param blobId Object-ID of the blob, see getBlobId
+     * @return size of the blob in bytes
+     * @throws IOException If the blob could not be found
+     */
+    public long getBlobSize(ObjectId blobId) throws IOException {
+        return getReader().getObjectSize(blobId, Constants.OBJ_BLOB);
+    }
 
-        ObjectId file = files.get(path);
-        ObjectLoader loader = repository.open(file);
-        InputStream in = loader.openStream();
-        String codeString = IOUtils.toString(in, "utf8");
-        code = codeString.toCharArray();
+    /**
+     * Load the blob index, so getBlobId finds the blob of a changed file without reading trees.
+     * A persisted index is used if it was built from the current refs, otherwise the index is built
+     * in one walk over the history.
+     *
+     * @param persist true to keep the index in the git directory for the next run
+     * @return the loaded index
+     * @throws IOException If the history could not be read
+     */
+    public BlobIndex loadBlobIndex(boolean persist) throws IOException {
+        File indexFile = new File(repository.getDirectory(), BLOBINDEXFILE);
+        BlobIndex index = null;
+        if (persist && indexFile.isFile()) {
+            try {
+                index = BlobIndex.read(indexFile);
+                if (!index.isCurrent(repository))
+                    index = null;
+            } catch (IOException e) {
+                // unreadable or old format, build it again
+                index = null;
+            }
+        }
+        if (index == null) {
+            index = BlobIndex.build(repository);
+            if (persist)
+                index.write(indexFile);
+        }
+        blobIndex = index;
+        return index;
+    }
 
-        return code;
+    /**
+     * @return the blob index, null if it is not loaded
+     */
+    public BlobIndex getBlobIndex() {
+        return blobIndex;
     }
 
     /**
-     * @param commitSHA The SHA-Hash of the commit
-     * @return A Hashmap consisting of Filepaths mapped to Object-IDs
-     * @throws IOException If file could not be acccess during file scan
+     * @return how often getBlobId found the blob in the blob index
      */
-    private Map<String, ObjectId> getFiles(String commitSHA) throws IOException {
+    public long getBlobIndexHits() {
+        return blobIndexHits.get();
+    }
 
-        Map<String, ObjectId> files = new HashMap<String, ObjectId>();
+    /**
+     * @return how often the tree of a commit was found in the commit tree cache
+     */
+    public long getTreeCacheHits() {
+        return treeCacheHits.get();
+    }
 
-        RevWalk walk = new RevWalk(repository);
-        ObjectId commitId =  ObjectId.fromString(commitSHA);
+    /**
+     * @return how often the tree of a commit had to be parsed
+     */
+    public long getTreeCacheMisses() {
+        return treeCacheMisses.get();
+    }
 
-        RevCommit commit = walk.parseCommit(commitId);
+    /**
+     * @return number of decoded blobs
+     */
+    public long getBlobsRead() {
+        return blobsRead.get();
+    }
+
+    /**
+     * @return number of decoded blobs above the stream file threshold, which were streamed from the pack
+     */
+    public long getLargeBlobsRead() {
+        return largeBlobsRead.get();
+    }
+
+    /**
+     * @return number of bytes of all decoded blobs
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    Repository getRepository() {
+        return repository;
+    }
+
+    public BlobSizePolicy getSizePolicy() {
+        return sizePolicy;
+    }
+
+    public void setSizePolicy(BlobSizePolicy sizePolicy) {
+        this.sizePolicy = sizePolicy;
+    }
+
+    /**
+     * Batch read of many files. Every (path, commit) pair is resolved to its blob and the
+     * blobs are read with readSourceCode(files, blobId, handler).
+     *
+     * @param files the requested files
+     * @param path Filepath of a requested file
+     * @param commitSHA The SHA-Hash of the commit of a requested file
+     * @param handler receives the source code of every file
+     * @param <T> the type of the requested files
+     */
+    public <T> void readSourceCode(List<T> files, Function<T, String> path, Function<T, String> commitSHA, ISourceCodeHandler<T> handler) {
+        Map<T, ObjectId> blobIds = new LinkedHashMap<T, ObjectId>();
+        for (T file : files) {
+            try {
+                blobIds.put(file, getBlobId(path.apply(file), commitSHA.apply(file)));
+            } catch (IOException e) {
+                handler.failed(file, e);
+            }
+        }
+        readSourceCode(blobIds.keySet(), blobIds::get, handler);
+    }
 
-        RevTree tree = commit.getTree();
-        TreeWalk treeWalk = new TreeWalk(repository);
-        treeWalk.addTree(tree);
-        treeWalk.setRecursive(false);
-        while (treeWalk.next()) {
-            if (treeWalk.isSubtree()) {
-                treeWalk.enterSubtree();
-            } else {
-                files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+    /**
+     * Batch read of many blobs. The blobs are read in the order they are stored in the pack
+     * files, so the reads stay sequential even on a cold page cache. A loader thread of the shared
+     * prefetch executor reads ahead while the handler processes the source code on the calling thread.
+     * Every blob is read once, even if several files share it.
+     *
+     * @param files the requested files
+     * @param blobId Object-ID of the blob of a requested file
+     * @param handler receives the source code of every file
+     * @param <T> the type of the requested files
+     */
+    public <T> void readSourceCode(Collection<T> files, Function<T, ObjectId> blobId, ISourceCodeHandler<T> handler) {
+        Map<ObjectId, List<T>> filesPerBlob = new HashMap<ObjectId, List<T>>();
+        for (T file : files)
+            filesPerBlob.computeIfAbsent(blobId.apply(file), id -> new ArrayList<T>()).add(file);
+        if (filesPerBlob.isEmpty())
+            return;
+
+        List<ObjectId> blobIds = new ArrayList<ObjectId>(filesPerBlob.keySet());
+        sortByPackPosition(blobIds);
+
+        BlockingQueue<LoadedBlob> loaded = new ArrayBlockingQueue<LoadedBlob>(PREFETCHSIZE);
+        Future<?> loader = PREFETCHEXECUTOR.submit(() -> loadBlobs(blobIds, loaded));
+        LoadedBlob end = null;
+        try {
+            while (!filesPerBlob.isEmpty()) {
+                LoadedBlob blob = loaded.take();
+                if (blob.id == null) {
+                    end = blob;
+                    break;
+                }
+                List<T> filesOfBlob = filesPerBlob.remove(blob.id);
+                if (filesOfBlob == null)
+                    continue;
+                for (T file : filesOfBlob) {
+                    if (blob.error != null)
+                        handler.failed(file, blob.error);
+                    else
+                        handler.handle(file, blob.code);
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            loader.cancel(true);
         }
-        walk.dispose();
-        return files;
+        IOException error = end != null ? end.error : null;
+        filesPerBlob.forEach((id, filesOfBlob) -> filesOfBlob.forEach(file ->
+                handler.failed(file, error != null ? error : new IOException("blob " + id.getName() + " could not be loaded"))));
     }
 
     /**
-     * Close repository
+     * Loader thread of a batch read. Reads the blobs with a reader of its own and hands them
+     * over to the consumer. One entry is put for every blob the queue reaches, then the end entry
+     * without id, unless the consumer stops. If the queue itself fails, the end entry has the error
+     * of all blobs it did not reach.
+     *
+     * @param blobIds blobs in read order
+     * @param loaded queue to the consumer
+     */
+    private void loadBlobs(List<ObjectId> blobIds, BlockingQueue<LoadedBlob> loaded) {
+        SourceCodeDecoder decoder = new SourceCodeDecoder();
+        IOException failure = null;
+        try {
+            try (ObjectReader reader = repository.newObjectReader()) {
+                AsyncObjectLoaderQueue<ObjectId> queue = reader.open(blobIds, true);
+                try {
+                    for (int i = 0; i < blobIds.size(); i++) {
+                        try {
+                            if (!queue.next())
+                                break;
+                        } catch (MissingObjectException e) {
+                            loaded.put(new LoadedBlob(e.getObjectId(), null, e));
+                            continue;
+                        }
+                        // the id of the object the queue is on, the queue may not keep the order of the ids
+                        ObjectId id = queue.getCurrent();
+                        try {
+                            loaded.put(new LoadedBlob(id, decode(queue.open(), decoder), null));
+                        } catch (IOException e) {
+                            loaded.put(new LoadedBlob(id, null, e));
+                        } catch (RuntimeException e) {
+                            loaded.put(new LoadedBlob(id, null, new IOException(e)));
+                        }
+                    }
+                } finally {
+                    queue.release();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException | Error e) {
+                // the consumer waits for the end entry, the future would keep the error to itself anyway
+                failure = new IOException(e);
+            }
+            loaded.put(new LoadedBlob(null, null, failure));
+        } catch (InterruptedException e) {
+            // consumer stopped reading
+        }
+    }
+
+    /**
+     * Sort blobs by their position in the pack files. Loose objects and objects of
+     * unknown position are read last.
+     * Relies on the internal jgit API org.eclipse.jgit.internal.storage.file.PackFile (getPacks, getIndex),
+     * which may change with any jgit release.
+     *
+     * @param blobIds the blobs to sort
+     */
+    private void sortByPackPosition(List<ObjectId> blobIds) {
+        if (!(repository instanceof FileRepository))
+            return;
+        List<PackFile> packs = new ArrayList<PackFile>(((FileRepository) repository).getObjectDatabase().getPacks());
+        Map<ObjectId, long[]> positions = new HashMap<ObjectId, long[]>();
+        for (ObjectId id : blobIds) {
+            long[] position = {packs.size(), 0};
+            for (int pack = 0; pack < packs.size(); pack++) {
+                try {
+                    long offset = packs.get(pack).getIndex().findOffset(id);
+                    if (offset >= 0) {
+                        position[0] = pack;
+                        position[1] = offset;
+                        break;
+                    }
+                } catch (IOException e) {
+                    // index not readable, try the other packs
+                }
+            }
+            positions.put(id, position);
+        }
+        blobIds.sort(Comparator.<ObjectId>comparingLong(id -> positions.get(id)[0])
+                .thenComparingLong(id -> positions.get(id)[1]));
+    }
+
+    /**
+     * Decode the content of a blob. Small blobs are decoded directly from the bytes cached
+     * by the loader, large blobs are streamed once into a byte array of their size.
+     *
+     * @param loader loader of the blob
+     * @param decoder decoder of the calling thread
+     * @return source code of the blob
+     * @throws IOException If the blob could not be read
+     */
+    private char[] decode(ObjectLoader loader, SourceCodeDecoder decoder) throws IOException {
+        blobsRead.incrementAndGet();
+        bytesRead.addAndGet(loader.getSize());
+        if (!loader.isLarge()) {
+            byte[] bytes = loader.getCachedBytes();
+            return decoder.decode(bytes, bytes.length);
+        }
+
+        largeBlobsRead.incrementAndGet();
+        long size = loader.getSize();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("blob of " + size + " bytes is too large to decode");
+        byte[] bytes = new byte[(int) size];
+        try (InputStream in = loader.openStream()) {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0)
+                    throw new EOFException("blob ended after " + read + " of " + size + " bytes");
+                read += n;
+            }
+        }
+        return decoder.decode(bytes, bytes.length);
+    }
+
+    /**
+     * Resolves the blob of a single file in a commit. Only the trees along the path are read,
+     * so the cost depends on the depth of the path and not on the size of the repository.
+     *
+     * @param path Filepath of the source file
+     * @param commitSHA The SHA-Hash of the commit
+     * @return Object-ID of the blob
+     * @throws IOException If the commit could not be read or the file is not found in commit
+     */
+    public ObjectId getBlobId(String path, String commitSHA) throws IOException {
+        BlobIndex index = blobIndex;
+        if (index != null) {
+            ObjectId blobId = index.lookup(ObjectId.fromString(commitSHA), path);
+            if (blobId != null) {
+                blobIndexHits.incrementAndGet();
+                return blobId;
+            }
+        }
+
+        ObjectId tree = getTree(commitSHA);
+        try (TreeWalk treeWalk = TreeWalk.forPath(getReader(), path, tree)) {
+            if (treeWalk == null || treeWalk.isSubtree())
+                throw new FileNotFoundException("file " + path + " not found in commit " + commitSHA);
+            return treeWalk.getObjectId(0);
+        }
+    }
+
+    /**
+     * @param commitSHA The SHA-Hash of the commit
+     * @return Object-ID of the root tree of the commit
+     * @throws IOException If the commit could not be read
+     */
+    private ObjectId getTree(String commitSHA) throws IOException {
+        ObjectId tree = commitTrees.get(commitSHA);
+        if (tree != null) {
+            treeCacheHits.incrementAndGet();
+            return tree;
+        }
+
+        treeCacheMisses.incrementAndGet();
+        // a short lived walk on the reader of the thread, a walk kept per thread would retain every commit it parsed
+        try (RevWalk walk = new RevWalk(getReader())) {
+            walk.setRetainBody(false);
+            RevCommit commit = walk.parseCommit(ObjectId.fromString(commitSHA));
+            tree = commit.getTree().copy();
+        }
+        commitTrees.put(commitSHA, tree);
+        return tree;
+    }
+
+    /**
+     * @return the object reader of the calling thread
+     */
+    private ObjectReader getReader() {
+        return readers.get();
+    }
+
+    /**
+     * Create the object reader for a new thread
+     *
+     * @return a new ObjectReader of the repository
+     */
+    private ObjectReader openReader() {
+        ObjectReader reader = repository.newObjectReader();
+        openReaders.add(reader);
+        return reader;
+    }
+
+    /**
+     * Close repository and the readers of all threads
      */
     public void closeRepository() {
+        ObjectReader reader;
+        while ((reader = openReaders.poll()) != null)
+            reader.close();
         repository.close();
     }
+
+    /**
+     * A blob read by the loader thread of a batch read, the end of the read has no id
+     */
+    private static class LoadedBlob {
+        private final ObjectId id;
+        private final char[] code;
+        private final IOException error;
+
+        LoadedBlob(ObjectId id, char[] code, IOException error) {
+            this.id = id;
+            this.code = code;
+            this.error = error;
+        }
+    }
 }
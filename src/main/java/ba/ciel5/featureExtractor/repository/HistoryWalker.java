@@ -0,0 +1,195 @@
+package ba.ciel5.featureExtractor.repository;
+
+import ba.ciel5.featureExtractor.model.Commit;
+import ba.ciel5.featureExtractor.model.File;
+import ba.ciel5.featureExtractor.model.Version;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Builds commits, files and versions from the history of a repository, without a crawler database.
+ * - every commit reachable from HEAD is diffed against its first parent, oldest commit first
+ * - every changed file gets a version with added and deleted lines, size and deleted flag
+ * - renamed files keep the id of their file
+ *
+ * The ids of files and versions are derived from commit and path, so walking the same history
+ * again gives the same ids.
+ */
+public class HistoryWalker {
+
+    private static final String JAVA = "Java";
+
+    private final Repository repository;
+    private final Integer repositoryId;
+    // path --> file id of all files which exist in the walked history
+    private final Map<String, String> livePaths = new HashMap<String, String>();
+    private final Map<String, File> files = new LinkedHashMap<String, File>();
+
+    /**
+     * @param git the repository to walk
+     * @param repositoryId the ID of the repository for commits and files
+     */
+    public HistoryWalker(Git git, Integer repositoryId) {
+        this.repository = git.getRepository();
+        this.repositoryId = repositoryId;
+    }
+
+    /**
+     * Walk the history from the first commit to HEAD
+     *
+     * @return all commits with their versions, oldest commit first
+     * @throws IOException if the history could not be read
+     */
+    public List<Commit> walk() throws IOException {
+        List<Commit> commits = new ArrayList<Commit>();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null)
+            return commits;
+
+        try (RevWalk revWalk = new RevWalk(repository);
+             ObjectReader reader = repository.newObjectReader();
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            diffFormatter.setRepository(repository);
+            diffFormatter.setDetectRenames(true);
+
+            revWalk.markStart(revWalk.parseCommit(head));
+            revWalk.sort(RevSort.TOPO);
+            revWalk.sort(RevSort.REVERSE, true);
+            for (RevCommit revCommit : revWalk)
+                commits.add(toCommit(revWalk, reader, diffFormatter, revCommit));
+        }
+        return commits;
+    }
+
+    /**
+     * @return all files of the walked history
+     */
+    public Collection<File> getFiles() {
+        return files.values();
+    }
+
+    /**
+     * Diff a commit against its first parent and build the commit with its versions
+     *
+     * @param revWalk walk of the history
+     * @param reader reader for the blob sizes
+     * @param diffFormatter diff with rename detection
+     * @param revCommit the commit
+     * @return the commit with one version per changed file
+     * @throws IOException if the commit could not be diffed
+     */
+    private Commit toCommit(RevWalk revWalk, ObjectReader reader, DiffFormatter diffFormatter, RevCommit revCommit) throws IOException {
+        String commitId = revCommit.getName();
+        RevTree parentTree = null;
+        if (revCommit.getParentCount() > 0)
+            parentTree = revWalk.parseCommit(revCommit.getParent(0)).getTree();
+
+        List<DiffEntry> entries = new ArrayList<DiffEntry>();
+        for (DiffEntry entry : diffFormatter.scan(parentTree, revCommit.getTree())) {
+            // submodules have no blob
+            if (entry.getOldMode() != FileMode.GITLINK && entry.getNewMode() != FileMode.GITLINK)
+                entries.add(entry);
+        }
+        // free the old paths first, a path can be deleted or renamed and added again in the same commit
+        entries.sort((e1, e2) -> Boolean.compare(!freesPath(e1), !freesPath(e2)));
+
+        int added = 0, deleted = 0, changed = 0, renamed = 0;
+        List<Version> versions = new ArrayList<Version>();
+        for (DiffEntry entry : entries) {
+            String fileId;
+            String path = entry.getNewPath();
+            switch (entry.getChangeType()) {
+                case DELETE:
+                    deleted++;
+                    path = entry.getOldPath();
+                    fileId = livePaths.remove(path);
+                    break;
+                case RENAME:
+                    renamed++;
+                    fileId = livePaths.remove(entry.getOldPath());
+                    break;
+                case MODIFY:
+                    changed++;
+                    fileId = livePaths.get(path);
+                    break;
+                default:
+                    // added or copied, a file of a merged branch is already known by its path
+                    added++;
+                    fileId = livePaths.get(path);
+            }
+            if (fileId == null)
+                fileId = newFile(commitId, path);
+            if (entry.getChangeType() != DiffEntry.ChangeType.DELETE)
+                livePaths.put(path, fileId);
+
+            int linesAdded = 0, linesDeleted = 0;
+            for (Edit edit : diffFormatter.toFileHeader(entry).toEditList()) {
+                linesAdded += edit.getLengthB();
+                linesDeleted += edit.getLengthA();
+            }
+            boolean isDeleted = entry.getChangeType() == DiffEntry.ChangeType.DELETE;
+            long fileSize = isDeleted ? 0 : reader.getObjectSize(entry.getNewId().toObjectId(), Constants.OBJ_BLOB);
+
+            versions.add(new Version(uuid("version", commitId, path), fileId, commitId, path,
+                    linesAdded, linesDeleted, (int) Math.min(fileSize, Integer.MAX_VALUE), isDeleted));
+        }
+
+        Commit commit = new Commit(commitId, repositoryId, revCommit.getFullMessage(),
+                revCommit.getAuthorIdent().getName(), new Date(revCommit.getCommitTime() * 1000L),
+                added, deleted, changed, renamed);
+        commit.getVersions().addAll(versions);
+        return commit;
+    }
+
+    /**
+     * @param entry a changed file
+     * @return true if the change frees its old path
+     */
+    private static boolean freesPath(DiffEntry entry) {
+        return entry.getChangeType() == DiffEntry.ChangeType.DELETE || entry.getChangeType() == DiffEntry.ChangeType.RENAME;
+    }
+
+    /**
+     * @param commitId the commit which adds the file
+     * @param path the path of the file in the commit
+     * @return the id of the new file
+     */
+    private String newFile(String commitId, String path) {
+        String fileId = uuid("file", commitId, path);
+        String language = path.endsWith(".java") ? JAVA : null;
+        files.put(fileId, new File(fileId, repositoryId, language));
+        return fileId;
+    }
+
+    /**
+     * @param kind the kind of the id
+     * @param commitId SHA-Hash of the commit
+     * @param path path of the file
+     * @return a name based UUID, the same for the same arguments
+     */
+    private static String uuid(String kind, String commitId, String path) {
+        return UUID.nameUUIDFromBytes((kind + ":" + commitId + ":" + path).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -0,0 +1,28 @@
+package ba.ciel5.featureExtractor.repository;
+
+import java.io.IOException;
+
+/**
+ * Receives the source code of a batch read, see Git.readSourceCode.
+ * Both methods are called on the thread which started the batch read.
+ *
+ * @param <T> the type of the requested files
+ */
+public interface ISourceCodeHandler<T> {
+
+    /**
+     * Called once for every file that could be read
+     *
+     * @param file the requested file
+     * @param code source code of the file
+     */
+    public void handle(T file, char[] code);
+
+    /**
+     * Called once for every file that could not be resolved or read
+     *
+     * @param file the requested file
+     * @param e the reason
+     */
+    public void failed(T file, IOException e);
+}
@@ -0,0 +1,128 @@
+package ba.ciel5.featureExtractor.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the bytes of a blob to source code.
+ * - a byte order mark selects UTF-8 or UTF-16 and is not part of the source code
+ * - without byte order mark the bytes are decoded as UTF-8
+ * - if they are not valid UTF-8 they are decoded again from the same bytes as ISO-8859-1
+ *
+ * The decoders and the char buffer are reused for every blob, so an instance must only be
+ * used by one thread at a time. The buffer grows up to MAXBUFFERSIZE chars, a larger blob is
+ * decoded into an array of its own, so a single huge blob does not stay in the buffer of every thread.
+ */
+public class SourceCodeDecoder {
+
+    private static final int INITIALBUFFERSIZE = 64 * 1024;
+    private static final int MAXBUFFERSIZE = 1024 * 1024;
+
+    private final CharsetDecoder utf8 = newDecoder(StandardCharsets.UTF_8);
+    private final CharsetDecoder utf16be = newDecoder(StandardCharsets.UTF_16BE);
+    private final CharsetDecoder utf16le = newDecoder(StandardCharsets.UTF_16LE);
+    private final CharsetDecoder fallback = newDecoder(StandardCharsets.ISO_8859_1);
+
+    private char[] buffer = new char[INITIALBUFFERSIZE];
+
+    /**
+     * Decode bytes to source code. The bytes are only read, never copied.
+     *
+     * @param bytes the content of the blob
+     * @param length number of valid bytes
+     * @return source code, a new array of exactly the decoded length
+     */
+    public char[] decode(byte[] bytes, int length) {
+        int offset = 0;
+        CharsetDecoder decoder = utf8;
+        if (startsWith(bytes, length, 0xEF, 0xBB, 0xBF)) {
+            offset = 3;
+        } else if (startsWith(bytes, length, 0xFE, 0xFF)) {
+            offset = 2;
+            decoder = utf16be;
+        } else if (startsWith(bytes, length, 0xFF, 0xFE)) {
+            offset = 2;
+            decoder = utf16le;
+        }
+
+        try {
+            return decode(decoder, bytes, offset, length - offset);
+        } catch (CharacterCodingException e) {
+            try {
+                return decode(fallback, bytes, offset, length - offset);
+            } catch (CharacterCodingException unreachable) {
+                // every byte is a valid ISO-8859-1 character
+                throw new IllegalStateException(unreachable);
+            }
+        }
+    }
+
+    /**
+     * Decode into the reusable buffer and copy the result out, a blob too large for the buffer is decoded into a new array
+     *
+     * @param decoder decoder of the charset
+     * @param bytes the content of the blob
+     * @param offset first byte of the content
+     * @param length number of bytes to decode
+     * @return source code
+     * @throws CharacterCodingException if the bytes are not valid in this charset
+     */
+    private char[] decode(CharsetDecoder decoder, byte[] bytes, int offset, int length) throws CharacterCodingException {
+        int maxLength = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+        char[] target;
+        if (maxLength > MAXBUFFERSIZE) {
+            target = new char[maxLength];
+        } else {
+            if (buffer.length < maxLength)
+                buffer = new char[Math.min(Math.max(maxLength, buffer.length * 2), MAXBUFFERSIZE)];
+            target = buffer;
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(bytes, offset, length);
+        CharBuffer out = CharBuffer.wrap(target);
+        decoder.reset();
+        CoderResult result = decoder.decode(in, out, true);
+        if (!result.isUnderflow())
+            result.throwException();
+        result = decoder.flush(out);
+        if (!result.isUnderflow())
+            result.throwException();
+
+        if (target != buffer && out.position() == target.length)
+            return target;
+        return Arrays.copyOf(target, out.position());
+    }
+
+    /**
+     * @param bytes the content of the blob
+     * @param length number of valid bytes
+     * @param mark the byte order mark
+     * @return true if the content starts with the byte order mark
+     */
+    private static boolean startsWith(byte[] bytes, int length, int... mark) {
+        if (length < mark.length)
+            return false;
+        for (int i = 0; i < mark.length; i++) {
+            if ((bytes[i] & 0xFF) != mark[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param charset the charset to decode
+     * @return a decoder which reports invalid input instead of replacing it
+     */
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+}
@@ -0,0 +1,180 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of parsed compilation units keyed by a hash of their content, e.g. the blob id.
+ * The cache is bounded by the estimated heap size of the units, the least recently used units are evicted first.
+ * A unit which is parsed right now by another thread is waited for, so the same content is never parsed twice
+ * while it stays in the cache.
+ */
+public class AbstractSyntaxTreeCache {
+
+    // a compilation unit took about 16 bytes per character of source code on the sources of this project,
+    // 20 adds a margin for files with denser syntax
+    private static final int BYTESPERCHAR = 20;
+    private static final int BYTESPERUNIT = 1024;
+
+    private final long maxBytes;
+    // content hash --> unit, in access order
+    private final LinkedHashMap<Object, Entry> units = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+    private long bytes;
+    // units which are parsed right now
+    private final Map<Object, CompletableFuture<CompilationUnit>> parsing = new ConcurrentHashMap<Object, CompletableFuture<CompilationUnit>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes estimated heap size of all cached units, 0 disables the cache
+     */
+    public AbstractSyntaxTreeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the unit of some content, parse it if it is not cached
+     * @param key hash of the content
+     * @param code the content as char array
+     * @return abstract syntax tree (Compilation unit)
+     */
+    public CompilationUnit get(Object key, char[] code) {
+        if (maxBytes <= 0) {
+            misses.incrementAndGet();
+            return AbstractSyntaxTreeUtil.parse(code);
+        }
+
+        synchronized (units) {
+            Entry entry = units.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.unit;
+            }
+        }
+
+        CompletableFuture<CompilationUnit> parsed = new CompletableFuture<CompilationUnit>();
+        CompletableFuture<CompilationUnit> other = parsing.putIfAbsent(key, parsed);
+        if (other != null) {
+            hits.incrementAndGet();
+            return join(other);
+        }
+
+        try {
+            // the other thread may have cached the unit just before this one started parsing
+            synchronized (units) {
+                Entry entry = units.get(key);
+                if (entry != null) {
+                    hits.incrementAndGet();
+                    parsed.complete(entry.unit);
+                    return entry.unit;
+                }
+            }
+
+            misses.incrementAndGet();
+            CompilationUnit unit = AbstractSyntaxTreeUtil.parse(code);
+            put(key, unit, estimateBytes(code));
+            parsed.complete(unit);
+            return unit;
+        } catch (RuntimeException e) {
+            parsed.completeExceptionally(e);
+            throw e;
+        } finally {
+            parsing.remove(key);
+        }
+    }
+
+    /**
+     * @param code source code
+     * @return estimated heap size of the compilation unit of the code
+     */
+    public static long estimateBytes(char[] code) {
+        return (long) code.length * BYTESPERCHAR + BYTESPERUNIT;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return estimated heap size of all cached units
+     */
+    public long getBytes() {
+        synchronized (units) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Cache a unit and evict the least recently used units until the cache fits
+     * @param key hash of the content
+     * @param unit the parsed unit
+     * @param unitBytes estimated heap size of the unit
+     */
+    private void put(Object key, CompilationUnit unit, long unitBytes) {
+        // a unit larger than the whole cache would only evict everything else
+        if (unitBytes > maxBytes)
+            return;
+
+        synchronized (units) {
+            Entry old = units.put(key, new Entry(unit, unitBytes));
+            if (old != null)
+                bytes -= old.bytes;
+            bytes += unitBytes;
+
+            Iterator<Entry> eldest = units.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Wait for a unit parsed by another thread
+     * @param parsed the unit of the other thread
+     * @return the unit
+     */
+    private static CompilationUnit join(CompletableFuture<CompilationUnit> parsed) {
+        try {
+            return parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a parsed unit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A cached unit with its estimated heap size
+     */
+    private static class Entry {
+        private final CompilationUnit unit;
+        private final long bytes;
+
+        Entry(CompilationUnit unit, long bytes) {
+            this.unit = unit;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a compilation unit: type or method declaration --> its method invocations, field accesses and variable fragments.
+ * The index is filled while the ast is walked, the nodes of a declaration are complete when the walk exits it.
+ * - a type gets all nodes inside of it, including its nested types and the bodies of its methods
+ * - a method gets all nodes inside of its body, including local and anonymous classes
+ * A node inside of several declarations is in the lists of all of them.
+ * The comment mask of the file is built on demand and shared by all groups of the file.
+ */
+public class AbstractSyntaxTreeIndex implements IAbstractSyntaxTreeListener {
+
+    private final Map<ASTNode, Entry> entries = new IdentityHashMap<ASTNode, Entry>();
+    // the declarations the walk is in right now, innermost first
+    private final Deque<Entry> open = new ArrayDeque<Entry>();
+    private CommentMask commentMask;
+
+    @Override
+    public void enter(ASTNode node) {
+        switch (node.getNodeType()) {
+            case ASTNode.TYPE_DECLARATION:
+            case ASTNode.ENUM_DECLARATION:
+            case ASTNode.ANNOTATION_TYPE_DECLARATION:
+                open.push(getOrCreate(node));
+                break;
+            case ASTNode.BLOCK:
+                if (node.getLocationInParent() == MethodDeclaration.BODY_PROPERTY)
+                    open.push(getOrCreate(node.getParent()));
+                break;
+            case ASTNode.METHOD_INVOCATION:
+                for (Entry entry : open)
+                    entry.methodInvocations = add(entry.methodInvocations, (MethodInvocation) node);
+                break;
+            case ASTNode.FIELD_ACCESS:
+                for (Entry entry : open)
+                    entry.fieldAccesses = add(entry.fieldAccesses, (FieldAccess) node);
+                break;
+            case ASTNode.VARIABLE_DECLARATION_FRAGMENT:
+                for (Entry entry : open)
+                    entry.variableDeclarationFragments = add(entry.variableDeclarationFragments, (VariableDeclarationFragment) node);
+                break;
+        }
+    }
+
+    @Override
+    public void exit(ASTNode node) {
+        switch (node.getNodeType()) {
+            case ASTNode.TYPE_DECLARATION:
+            case ASTNode.ENUM_DECLARATION:
+            case ASTNode.ANNOTATION_TYPE_DECLARATION:
+                open.pop();
+                break;
+            case ASTNode.BLOCK:
+                if (node.getLocationInParent() == MethodDeclaration.BODY_PROPERTY)
+                    open.pop();
+                break;
+        }
+    }
+
+    /**
+     * Get all method calls of a method or a type
+     * @param declaration to search
+     * @return a list of all method calls
+     */
+    public List<MethodInvocation> getMethodInvocations(ASTNode declaration) {
+        Entry entry = entries.get(declaration);
+        return entry == null ? Collections.<MethodInvocation>emptyList() : unmodifiable(entry.methodInvocations);
+    }
+
+    /**
+     * Get every access to a class variable (field) of a method or a type
+     * @param declaration to search
+     * @return a list of all access statements
+     */
+    public List<FieldAccess> getFieldAccesses(ASTNode declaration) {
+        Entry entry = entries.get(declaration);
+        return entry == null ? Collections.<FieldAccess>emptyList() : unmodifiable(entry.fieldAccesses);
+    }
+
+    /**
+     * Get all variable declaration fragements of a method or a type
+     * @param declaration to search
+     * @return a list of all fragments
+     */
+    public List<VariableDeclarationFragment> getVariableDeclarationFragments(ASTNode declaration) {
+        Entry entry = entries.get(declaration);
+        return entry == null ? Collections.<VariableDeclarationFragment>emptyList() : unmodifiable(entry.variableDeclarationFragments);
+    }
+
+    /**
+     * Get the comment mask of the file, it is built on the first call
+     * @param ast the indexed compilation unit
+     * @param code code char array of the compilation unit
+     * @return the comment mask
+     */
+    public CommentMask getCommentMask(CompilationUnit ast, char[] code) {
+        if (commentMask == null)
+            commentMask = CommentMask.of(ast, code);
+        return commentMask;
+    }
+
+    /**
+     * @param declaration a type or a method
+     * @return the entry of the declaration
+     */
+    private Entry getOrCreate(ASTNode declaration) {
+        return entries.computeIfAbsent(declaration, d -> new Entry());
+    }
+
+    /**
+     * Add a node to a list, most declarations have no nodes of a kind so lists are created on demand
+     * @param list the list or null
+     * @param node the node
+     * @param <T> type of the node
+     * @return the list with the node
+     */
+    private static <T> List<T> add(List<T> list, T node) {
+        if (list == null)
+            list = new ArrayList<T>();
+        list.add(node);
+        return list;
+    }
+
+    private static <T> List<T> unmodifiable(List<T> list) {
+        return list == null ? Collections.<T>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * The nodes of a declaration
+     */
+    private static class Entry {
+        private List<MethodInvocation> methodInvocations;
+        private List<FieldAccess> fieldAccesses;
+        private List<VariableDeclarationFragment> variableDeclarationFragments;
+    }
+}
@@ -12,19 +12,181 @@ import java.util.List;
  */
 public class AbstractSyntaxTreeUtil {
 
+    // node types of the statements in statement nGrams, classes and methods are added with their signature
+    public static final NodeTypes STATEMENTS = NodeTypes.of(
+            ASTNode.ANONYMOUS_CLASS_DECLARATION,
+            ASTNode.ASSERT_STATEMENT,
+            ASTNode.BLOCK,
+            ASTNode.BLOCK_COMMENT,
+            ASTNode.BREAK_STATEMENT,
+            ASTNode.CATCH_CLAUSE,
+            ASTNode.CLASS_INSTANCE_CREATION,
+            ASTNode.CONSTRUCTOR_INVOCATION,
+            ASTNode.CONTINUE_STATEMENT,
+            ASTNode.DO_STATEMENT,
+            ASTNode.EMPTY_STATEMENT,
+            ASTNode.ENHANCED_FOR_STATEMENT,
+            ASTNode.EXPRESSION_STATEMENT,
+            ASTNode.FOR_STATEMENT,
+            ASTNode.IF_STATEMENT,
+            ASTNode.IMPORT_DECLARATION,
+            ASTNode.JAVADOC,
+            ASTNode.LABELED_STATEMENT,
+            ASTNode.LINE_COMMENT,
+            ASTNode.MARKER_ANNOTATION,
+            ASTNode.NORMAL_ANNOTATION,
+            ASTNode.PACKAGE_DECLARATION,
+            ASTNode.RETURN_STATEMENT,
+            ASTNode.SWITCH_STATEMENT,
+            ASTNode.SYNCHRONIZED_STATEMENT,
+            ASTNode.THROW_STATEMENT,
+            ASTNode.TRY_STATEMENT,
+            ASTNode.TYPE_DECLARATION_STATEMENT,
+            ASTNode.VARIABLE_DECLARATION_STATEMENT,
+            ASTNode.WHILE_STATEMENT
+    );
+
+    // node types of the control structures in control structure nGrams, blocks, classes and methods are added with their size
+    public static final NodeTypes CONTROL_STRUCTURES = NodeTypes.of(
+            ASTNode.ANONYMOUS_CLASS_DECLARATION,
+            ASTNode.BREAK_STATEMENT,
+            ASTNode.CATCH_CLAUSE,
+            ASTNode.CLASS_INSTANCE_CREATION,
+            ASTNode.CONTINUE_STATEMENT,
+            ASTNode.DO_STATEMENT,
+            ASTNode.FOR_STATEMENT,
+            ASTNode.IF_STATEMENT,
+            ASTNode.PACKAGE_DECLARATION,
+            ASTNode.RETURN_STATEMENT,
+            ASTNode.SWITCH_STATEMENT,
+            ASTNode.SYNCHRONIZED_STATEMENT,
+            ASTNode.THROW_STATEMENT,
+            ASTNode.TRY_STATEMENT,
+            ASTNode.WHILE_STATEMENT
+    );
+
+    // node types of the declarations in class and method nGrams, besides classes and methods
+    public static final NodeTypes DECLARATIONS = NodeTypes.of(
+            ASTNode.PACKAGE_DECLARATION
+    );
+
+    // node types of the control statements which are operators of Halstead
+    public static final NodeTypes CONTROL_STATEMENTS = NodeTypes.of(
+            ASTNode.CATCH_CLAUSE,
+            ASTNode.DO_STATEMENT,
+            ASTNode.FOR_STATEMENT,
+            ASTNode.ENHANCED_FOR_STATEMENT,
+            ASTNode.IF_STATEMENT,
+            ASTNode.SWITCH_STATEMENT,
+            ASTNode.SYNCHRONIZED_STATEMENT,
+            ASTNode.TRY_STATEMENT,
+            ASTNode.WHILE_STATEMENT
+    );
+
+    // node types of the other statements which are operators of Halstead
+    public static final NodeTypes OTHER_STATEMENTS = NodeTypes.of(
+            ASTNode.ANONYMOUS_CLASS_DECLARATION,
+            ASTNode.ASSERT_STATEMENT,
+            ASTNode.BREAK_STATEMENT,
+            ASTNode.CLASS_INSTANCE_CREATION,
+            ASTNode.CONSTRUCTOR_INVOCATION,
+            ASTNode.CONTINUE_STATEMENT,
+            ASTNode.EMPTY_STATEMENT,
+            ASTNode.LABELED_STATEMENT,
+            ASTNode.MARKER_ANNOTATION,
+            ASTNode.NORMAL_ANNOTATION,
+            ASTNode.PACKAGE_DECLARATION,
+            ASTNode.RETURN_STATEMENT,
+            ASTNode.THROW_STATEMENT
+    );
+
+    // node types of the expressions which are operators of Halstead
+    public static final NodeTypes EXPRESSIONS = NodeTypes.of(
+            ASTNode.INSTANCEOF_EXPRESSION,
+            ASTNode.THIS_EXPRESSION,
+            ASTNode.MODIFIER
+    );
+
+    // node types of the types which are operators of Halstead
+    public static final NodeTypes TYPES = NodeTypes.of(
+            ASTNode.PRIMITIVE_TYPE,
+            ASTNode.SIMPLE_TYPE,
+            ASTNode.PARAMETERIZED_TYPE,
+            ASTNode.QUALIFIED_TYPE,
+            ASTNode.WILDCARD_TYPE
+    );
+
+    // node types of the literals which are operands of Halstead
+    public static final NodeTypes LITERALS = NodeTypes.of(
+            ASTNode.BOOLEAN_LITERAL,
+            ASTNode.CHARACTER_LITERAL,
+            ASTNode.NULL_LITERAL,
+            ASTNode.STRING_LITERAL,
+            ASTNode.TYPE_LITERAL
+    );
+
+    // node types which may add to the McCabe complexity
+    public static final NodeTypes MCCABE_STATEMENTS = NodeTypes.of(
+            ASTNode.CATCH_CLAUSE,
+            ASTNode.DO_STATEMENT,
+            ASTNode.FOR_STATEMENT,
+            ASTNode.ENHANCED_FOR_STATEMENT,
+            ASTNode.IF_STATEMENT,
+            ASTNode.SWITCH_CASE,
+            ASTNode.WHILE_STATEMENT,
+            ASTNode.CONDITIONAL_EXPRESSION,
+            ASTNode.EXPRESSION_STATEMENT,
+            ASTNode.VARIABLE_DECLARATION_FRAGMENT
+    );
+
+    // a parser per thread, it is reset after every parse and can be used again
+    private static final ThreadLocal<ASTParser> parsers = ThreadLocal.withInitial(() -> ASTParser.newParser(AST.JLS8));
+    private static volatile ParserOptions defaultOptions = ParserOptions.defaults();
+
     /**
      * Parses Java char code array to abstract syntax tree
      * @param code as char array
      * @return abstract syntra tree (Compilation unit)
      */
     public static CompilationUnit parse(char[] code) {
-        ASTParser parser = ASTParser.newParser(AST.JLS8);
+        return parse(code, defaultOptions);
+    }
+
+    /**
+     * Parses Java char code array to abstract syntax tree
+     * @param code as char array
+     * @param ignoreMethodBodies true to leave the method bodies empty, all comments are still reported
+     * @return abstract syntra tree (Compilation unit)
+     */
+    public static CompilationUnit parse(char[] code, boolean ignoreMethodBodies) {
+        return parse(code, defaultOptions.withIgnoreMethodBodies(ignoreMethodBodies));
+    }
+
+    /**
+     * Parses Java char code array to abstract syntax tree with the parser of the calling thread
+     * @param code as char array
+     * @param options options of the parser
+     * @return abstract syntra tree (Compilation unit)
+     */
+    public static CompilationUnit parse(char[] code, ParserOptions options) {
+        ASTParser parser = parsers.get();
         parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        options.configure(parser);
         parser.setSource(code);
-        parser.setResolveBindings(true);
         return (CompilationUnit) parser.createAST(null);
     }
 
+    public static ParserOptions getDefaultOptions() {
+        return defaultOptions;
+    }
+
+    /**
+     * @param options the options of all parses without explicit options
+     */
+    public static void setDefaultOptions(ParserOptions options) {
+        defaultOptions = options;
+    }
+
     /**
      * Get all imports
      * @param ast code
@@ -104,7 +266,7 @@ public class AbstractSyntaxTreeUtil {
     }
 
     /**
-     * Get all method calls of a method
+     * Get all method calls of a method, walks the method again. AbstractSyntaxTreeIndex has them after the walk of the ast
      * @param method to search
      * @return a list of all method calls
      */
@@ -125,7 +287,7 @@ public class AbstractSyntaxTreeUtil {
     }
 
     /**
-     * Get every access to a class variable (field)
+     * Get every access to a class variable (field), walks the method again. AbstractSyntaxTreeIndex has them after the walk of the ast
      * @param method to search
      * @return a list of all access statements
      */
@@ -145,7 +307,7 @@ public class AbstractSyntaxTreeUtil {
     }
 
     /**
-     * Get all variable declaration fragements
+     * Get all variable declaration fragements, walks the method again. AbstractSyntaxTreeIndex has them after the walk of the ast
      * @param method to search
      * @return a list of all statements
      */
@@ -204,4 +366,45 @@ public class AbstractSyntaxTreeUtil {
         }
         return items;
     }
+
+    /**
+     * An immutable set of node types, a lookup table indexed by the node type
+     */
+    public static final class NodeTypes {
+        private final boolean[] table;
+
+        private NodeTypes(boolean[] table) {
+            this.table = table;
+        }
+
+        /**
+         * @param nodeTypes node types of ASTNode, e.g. ASTNode.IF_STATEMENT
+         * @return the set of the node types
+         */
+        public static NodeTypes of(int... nodeTypes) {
+            int max = 0;
+            for (int nodeType : nodeTypes)
+                max = Math.max(max, nodeType);
+            boolean[] table = new boolean[max + 1];
+            for (int nodeType : nodeTypes)
+                table[nodeType] = true;
+            return new NodeTypes(table);
+        }
+
+        /**
+         * @param nodeType node type of ASTNode
+         * @return true if the node type is in the set
+         */
+        public boolean contains(int nodeType) {
+            return nodeType < table.length && table[nodeType];
+        }
+
+        /**
+         * @param node an ast node
+         * @return true if the type of the node is in the set
+         */
+        public boolean contains(ASTNode node) {
+            return contains(node.getNodeType());
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Walks an abstract syntax tree once and sends every node to all listeners,
+ * so any number of feature groups costs a single traversal per file.
+ * The nodes are the same an ASTVisitor without doc tags visits.
+ */
+public class AbstractSyntaxTreeWalker {
+
+    /**
+     * @param ast the tree
+     * @param listener the only listener
+     */
+    public static void walk(CompilationUnit ast, IAbstractSyntaxTreeListener listener) {
+        walk(ast, Collections.singletonList(listener));
+    }
+
+    /**
+     * @param ast the tree
+     * @param listeners the listeners in the order they get the enter events, exit events come in reverse order
+     */
+    public static void walk(CompilationUnit ast, List<? extends IAbstractSyntaxTreeListener> listeners) {
+        if (listeners.isEmpty())
+            return;
+        IAbstractSyntaxTreeListener[] all = listeners.toArray(new IAbstractSyntaxTreeListener[listeners.size()]);
+
+        ast.accept(new ASTVisitor() {
+            @Override
+            public void preVisit(ASTNode node) {
+                for (IAbstractSyntaxTreeListener listener : all)
+                    listener.enter(node);
+            }
+
+            @Override
+            public void postVisit(ASTNode node) {
+                for (int i = all.length - 1; i >= 0; i--)
+                    all[i].exit(node);
+            }
+        });
+    }
+}
@@ -22,6 +22,19 @@ public class Average {
             return list.get(middle);
     }
 
+    /**
+     * calculate median from a sorted array
+     * @param sorted integers in ascending order
+     * @return median
+     */
+    public static double getMedianFromInts(int[] sorted) {
+        int middle = sorted.length / 2;
+        if (sorted.length % 2 == 0)
+            return ((sorted[middle - 1] + sorted[middle]) / 2.0);
+        else
+            return sorted[middle];
+    }
+
     /**
      * calculate median from a list
      * @param list doubles
@@ -0,0 +1,31 @@
+package ba.ciel5.featureExtractor.utils;
+
+/**
+ * A file exceeded the time or size budget of a phase, the file is quarantined instead of extracted
+ */
+public class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String phase;
+    private final long elapsed;
+
+    /**
+     * @param phase the phase, e.g. parse or extract
+     * @param budget the exceeded budget, e.g. 1000 ms
+     * @param elapsed milliseconds the phase ran until it was stopped
+     */
+    public BudgetExceededException(String phase, String budget, long elapsed) {
+        super(phase + " exceeded " + budget + " after " + elapsed + " ms");
+        this.phase = phase;
+        this.elapsed = elapsed;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+}
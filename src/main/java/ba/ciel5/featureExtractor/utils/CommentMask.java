@@ -0,0 +1,92 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.Arrays;
+
+/**
+ * Marks every char of a file as comment or code, built once per file from the comment positions.
+ * A line comment covers its line break as well, so a comment-less view joins the line of a line comment
+ * with the next line, like removing the comment text did before.
+ * All views of the mask are one pass over the file, the lines of the file are indexed once.
+ */
+public class CommentMask {
+
+    private final LexicalScan comments;
+    private final char[] code;
+    private final boolean[] comment;
+    private LineIndex lineIndex;
+
+    private CommentMask(LexicalScan comments, char[] code, boolean[] comment) {
+        this.comments = comments;
+        this.code = code;
+        this.comment = comment;
+    }
+
+    /**
+     * @param comments the comments of the code
+     * @param code as char array
+     * @return the mask of the code
+     */
+    public static CommentMask of(LexicalScan comments, char[] code) {
+        boolean[] comment = new boolean[code.length];
+        for (int i = 0; i < comments.getCommentCount(); i++) {
+            int start = Math.max(comments.getCommentStart(i), 0);
+            int end = Math.min(start + comments.getCommentLength(i), code.length);
+            // a line comment ends with the next line break
+            if (comments.isLineComment(i)) {
+                while (end < code.length && code[end - 1] != '\n')
+                    end++;
+            }
+            for (int j = start; j < end; j++)
+                comment[j] = true;
+        }
+        return new CommentMask(comments, code, comment);
+    }
+
+    /**
+     * @param ast abstract syntax tree (Compilation unit) of the code
+     * @param code as char array
+     * @return the mask of the code with the comments of the ast
+     */
+    public static CommentMask of(CompilationUnit ast, char[] code) {
+        return of(LexicalScan.of(ast), code);
+    }
+
+    /**
+     * @return the comments the mask is built of
+     */
+    public LexicalScan getComments() {
+        return comments;
+    }
+
+    /**
+     * @param position position of a char
+     * @return true if the char belongs to a comment
+     */
+    public boolean isComment(int position) {
+        return comment[position];
+    }
+
+    /**
+     * @return the code without the comments
+     */
+    public char[] getCommentLessCode() {
+        char[] commentLess = new char[code.length];
+        int length = 0;
+        for (int i = 0; i < code.length; i++) {
+            if (!comment[i])
+                commentLess[length++] = code[i];
+        }
+        return length == code.length ? commentLess : Arrays.copyOf(commentLess, length);
+    }
+
+    /**
+     * @return the lines of the code, built on the first call and shared by all features of the file
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null)
+            lineIndex = LineIndex.of(this, code);
+        return lineIndex;
+    }
+}
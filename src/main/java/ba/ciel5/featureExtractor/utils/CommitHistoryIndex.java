@@ -0,0 +1,236 @@
+package ba.ciel5.featureExtractor.utils;
+
+import ba.ciel5.featureExtractor.model.Commit;
+import ba.ciel5.featureExtractor.model.Issue;
+import ba.ciel5.featureExtractor.model.Version;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the history of a repository, built once per run from all commits:
+ * commit id --> commit and file id --> the commits which changed the file, sorted by time.
+ * The history of a file keeps prefix sums of the changed lines, the changed files and the issues of its commits,
+ * so the sum of a time window is two binary searches and a subtraction.
+ * Missing counts count as 0. The index is immutable and can be shared by all threads.
+ */
+public class CommitHistoryIndex {
+
+    public enum FileChange {
+        ADDED, DELETED, RENAMED, CHANGED
+    }
+
+    private static final FileHistory EMPTY = new FileHistory(new ArrayList<Commit>());
+
+    private final Map<String, Commit> commits = new HashMap<String, Commit>();
+    private final Map<String, FileHistory> files = new HashMap<String, FileHistory>();
+
+    /**
+     * @param commits all commits of the repository with their versions
+     */
+    public CommitHistoryIndex(List<Commit> commits) {
+        Map<String, List<Commit>> fileCommits = new HashMap<String, List<Commit>>();
+        for (Commit commit : commits) {
+            this.commits.putIfAbsent(commit.getId(), commit);
+            // a commit with several versions of a file is in its history once
+            Set<String> fileIds = new LinkedHashSet<String>();
+            for (Version version : commit.getVersions())
+                fileIds.add(version.getFileId());
+            for (String fileId : fileIds)
+                fileCommits.computeIfAbsent(fileId, f -> new ArrayList<Commit>()).add(commit);
+        }
+        fileCommits.forEach((fileId, history) -> files.put(fileId, new FileHistory(history)));
+    }
+
+    /**
+     * @param commitId id of a commit
+     * @return the commit, null if there is none with the id
+     */
+    public Commit getCommit(String commitId) {
+        return commits.get(commitId);
+    }
+
+    /**
+     * @param fileId id of a file
+     * @return the commits which changed the file, an empty history for an unknown file
+     */
+    public FileHistory getFileHistory(String fileId) {
+        FileHistory history = files.get(fileId);
+        return history != null ? history : EMPTY;
+    }
+
+    /**
+     * The commits of a file sorted by time, commits of the same time keep the order of the repository.
+     * A range of commits is given by the first commit and the first commit after it, e.g. getLinesAdded(from, to).
+     */
+    public static class FileHistory {
+        private final Commit[] commits;
+        private final long[] timestamps;
+        // prefix sums, the sum of the first n commits is at n
+        private final long[] timestampSums;
+        private final long[] linesAdded;
+        private final long[] linesDeleted;
+        private final long[][] files = new long[FileChange.values().length][];
+        private final Map<String, long[]> issues = new HashMap<String, long[]>();
+
+        private FileHistory(List<Commit> history) {
+            commits = history.stream()
+                    .sorted(Comparator.comparing(Commit::getTimestamp))
+                    .toArray(Commit[]::new);
+            int size = commits.length;
+            timestamps = new long[size];
+            timestampSums = new long[size + 1];
+            linesAdded = new long[size + 1];
+            linesDeleted = new long[size + 1];
+            for (FileChange change : FileChange.values())
+                files[change.ordinal()] = new long[size + 1];
+
+            for (int i = 0; i < size; i++) {
+                Commit commit = commits[i];
+                timestamps[i] = commit.getTimestamp().getTime();
+                timestampSums[i + 1] = timestampSums[i] + timestamps[i];
+                long added = 0;
+                long deleted = 0;
+                for (Version version : commit.getVersions()) {
+                    added += valueOf(version.getLinesAdded());
+                    deleted += valueOf(version.getLinesDeleted());
+                }
+                linesAdded[i + 1] = linesAdded[i] + added;
+                linesDeleted[i + 1] = linesDeleted[i] + deleted;
+                for (FileChange change : FileChange.values())
+                    files[change.ordinal()][i + 1] = files[change.ordinal()][i] + getFiles(change, i);
+                for (Issue issue : commit.getIssues()) {
+                    if (issue.getType() != null)
+                        issues.computeIfAbsent(issue.getType(), t -> new long[size + 1])[i + 1]++;
+                }
+            }
+            for (long[] counts : issues.values()) {
+                for (int i = 0; i < size; i++)
+                    counts[i + 1] += counts[i];
+            }
+        }
+
+        /**
+         * @return number of commits
+         */
+        public int size() {
+            return commits.length;
+        }
+
+        /**
+         * @param commit number of a commit, from the oldest one
+         * @return the commit
+         */
+        public Commit getCommit(int commit) {
+            return commits[commit];
+        }
+
+        /**
+         * @param commit number of a commit, from the oldest one
+         * @return time of the commit in milliseconds
+         */
+        public long getTimestamp(int commit) {
+            return timestamps[commit];
+        }
+
+        /**
+         * @param time a time in milliseconds
+         * @return number of commits older than the time, which is the first commit not older than the time
+         */
+        public int countOlderThan(long time) {
+            int low = 0;
+            int high = timestamps.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] < time)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * @param time a time in milliseconds
+         * @return number of commits not newer than the time, which is the first commit newer than the time
+         */
+        public int countNotNewerThan(long time) {
+            return time == Long.MAX_VALUE ? timestamps.length : countOlderThan(time + 1);
+        }
+
+        /**
+         * @param from first commit of the range
+         * @param to first commit after the range
+         * @return sum of the times of the commits in milliseconds
+         */
+        public long getTimestampSum(int from, int to) {
+            return timestampSums[to] - timestampSums[from];
+        }
+
+        /**
+         * @param from first commit of the range
+         * @param to first commit after the range
+         * @return lines added by all versions of the commits, including the versions of other files
+         */
+        public long getLinesAdded(int from, int to) {
+            return linesAdded[to] - linesAdded[from];
+        }
+
+        /**
+         * @param from first commit of the range
+         * @param to first commit after the range
+         * @return lines deleted by all versions of the commits, including the versions of other files
+         */
+        public long getLinesDeleted(int from, int to) {
+            return linesDeleted[to] - linesDeleted[from];
+        }
+
+        /**
+         * @param change kind of change
+         * @param commit number of a commit, from the oldest one
+         * @return number of files the commit changed in this way
+         */
+        public int getFiles(FileChange change, int commit) {
+            switch (change) {
+                case ADDED:
+                    return valueOf(commits[commit].getAddedFilesCount());
+                case DELETED:
+                    return valueOf(commits[commit].getDeletedFilesCount());
+                case RENAMED:
+                    return valueOf(commits[commit].getRenamedFilesCount());
+                default:
+                    return valueOf(commits[commit].getChangedFilesCount());
+            }
+        }
+
+        /**
+         * @param change kind of change
+         * @param from first commit of the range
+         * @param to first commit after the range
+         * @return number of files the commits changed in this way
+         */
+        public long getFiles(FileChange change, int from, int to) {
+            return files[change.ordinal()][to] - files[change.ordinal()][from];
+        }
+
+        /**
+         * @param type type of issue, e.g. BUG
+         * @param from first commit of the range
+         * @param to first commit after the range
+         * @return number of issues of the type of the commits
+         */
+        public long getIssues(String type, int from, int to) {
+            long[] counts = issues.get(type);
+            return counts == null ? 0 : counts[to] - counts[from];
+        }
+
+        private static int valueOf(Integer value) {
+            return value == null ? 0 : value;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.ini4j.Wini;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -21,19 +22,49 @@ public class Config {
     private static final String DEFAULTSECTION = "DEFAULT";
     private static final String FEATURESSECTION = "FEATURES";
     private static final String DATABASESECTION = "DATABASE";
-
-    private String repositoryName;
+    private static final String LIMITSSECTION = "LIMITS";
+    private static final String GITSECTION = "GIT";
+    private static final String PARSERSECTION = "PARSER";
+
+    private List<String> repositoryNames;
+    private String repositoryNamePattern;
+    private Integer parallelRepositories;
+    private String repositorySource;
+    private String repositoryUrl;
+    private Integer repositoryId;
     private Integer partitions;
     private String logLevel;
     private String logFilename;
     private Integer maxNGramSize;
     private Integer maxNGramFieldSize;
+    private Long astCacheSize;
+    private String syntaxCacheDirectory;
+    private Long syntaxCacheSize;
+    private Boolean streamHistoryFeatures;
+    private Boolean resolveBindings;
+    private Boolean statementsRecovery;
+    private String sourceLevel;
     private List<String> featureGroups;
     private String databaseDialect;
     private String databaseDriver;
     private String databaseUrl;
     private String databaseUser;
     private String databaseUserPassword;
+    private Long slowLaneFileSize;
+    private Long lexicalOnlyFileSize;
+    private Long maxFileSize;
+    private Long parseTimeout;
+    private Long extractTimeout;
+    private Long maxAstNodes;
+    private String quarantineReport;
+    private Long packedGitLimit;
+    private Integer packedGitWindowSize;
+    private Integer packedGitOpenFiles;
+    private Boolean packedGitMMAP;
+    private Integer deltaBaseCacheLimit;
+    private Integer streamFileThreshold;
+    private Boolean blobIndex;
+    private Boolean persistBlobIndex;
 
     //CLI Options
     private String configFile = null;
@@ -78,7 +109,12 @@ public class Config {
         databaseUser = iniFileParser.get(DATABASESECTION, "user", String.class);
         databaseUserPassword = iniFileParser.get(DATABASESECTION, "userPassword", String.class);
 
-        repositoryName = iniFileParser.get(REPOSITORYSECTION, "name", String.class);
+        String repositoryNamesString = iniFileParser.get(REPOSITORYSECTION, "name", String.class);
+        repositoryNamePattern = iniFileParser.get(REPOSITORYSECTION, "namePattern", String.class);
+        parallelRepositories = iniFileParser.get(REPOSITORYSECTION, "parallelRepositories", Integer.class);
+        repositorySource = iniFileParser.get(REPOSITORYSECTION, "source", String.class);
+        repositoryUrl = iniFileParser.get(REPOSITORYSECTION, "url", String.class);
+        repositoryId = iniFileParser.get(REPOSITORYSECTION, "id", Integer.class);
 
         partitions = iniFileParser.get(DEFAULTSECTION, "partitions", Integer.class);
         logFilename = iniFileParser.get(DEFAULTSECTION, "logFilename", String.class);
@@ -86,8 +122,34 @@ public class Config {
 
         maxNGramSize = iniFileParser.get(FEATURESSECTION, "maxNGramSize", Integer.class);
         maxNGramFieldSize = iniFileParser.get(FEATURESSECTION, "maxNGramFieldSize", Integer.class);
+        astCacheSize = iniFileParser.get(FEATURESSECTION, "astCacheSize", Long.class);
+        syntaxCacheDirectory = iniFileParser.get(FEATURESSECTION, "syntaxCacheDirectory", String.class);
+        syntaxCacheSize = iniFileParser.get(FEATURESSECTION, "syntaxCacheSize", Long.class);
+        streamHistoryFeatures = iniFileParser.get(FEATURESSECTION, "streamHistoryFeatures", Boolean.class);
+
+        resolveBindings = iniFileParser.get(PARSERSECTION, "resolveBindings", Boolean.class);
+        statementsRecovery = iniFileParser.get(PARSERSECTION, "statementsRecovery", Boolean.class);
+        sourceLevel = iniFileParser.get(PARSERSECTION, "sourceLevel", String.class);
         String featureGroupsString = iniFileParser.get(FEATURESSECTION, "featureGroups", String.class);
 
+        slowLaneFileSize = iniFileParser.get(LIMITSSECTION, "slowLaneFileSize", Long.class);
+        lexicalOnlyFileSize = iniFileParser.get(LIMITSSECTION, "lexicalOnlyFileSize", Long.class);
+        maxFileSize = iniFileParser.get(LIMITSSECTION, "maxFileSize", Long.class);
+        parseTimeout = iniFileParser.get(LIMITSSECTION, "parseTimeout", Long.class);
+        extractTimeout = iniFileParser.get(LIMITSSECTION, "extractTimeout", Long.class);
+        maxAstNodes = iniFileParser.get(LIMITSSECTION, "maxAstNodes", Long.class);
+        quarantineReport = iniFileParser.get(LIMITSSECTION, "quarantineReport", String.class);
+
+        // unset values keep the default of jgit
+        packedGitLimit = iniFileParser.get(GITSECTION, "packedGitLimit", Long.class);
+        packedGitWindowSize = iniFileParser.get(GITSECTION, "packedGitWindowSize", Integer.class);
+        packedGitOpenFiles = iniFileParser.get(GITSECTION, "packedGitOpenFiles", Integer.class);
+        packedGitMMAP = iniFileParser.get(GITSECTION, "packedGitMMAP", Boolean.class);
+        deltaBaseCacheLimit = iniFileParser.get(GITSECTION, "deltaBaseCacheLimit", Integer.class);
+        streamFileThreshold = iniFileParser.get(GITSECTION, "streamFileThreshold", Integer.class);
+        blobIndex = iniFileParser.get(GITSECTION, "blobIndex", Boolean.class);
+        persistBlobIndex = iniFileParser.get(GITSECTION, "persistBlobIndex", Boolean.class);
+
         if ( databaseDialect == null )
             throw new IOException("Database dialect not found in config");
         if ( databaseDriver == null )
@@ -99,8 +161,23 @@ public class Config {
         if ( databaseUserPassword == null )
             throw new IOException("Database user password not found in config");
 
-        if (repositoryName == null)
+        if (repositoryNamesString == null && repositoryNamePattern == null)
             throw new IOException("Repository name not found in config");
+        repositoryNames = new ArrayList<String>();
+        if (repositoryNamesString != null)
+            repositoryNames.addAll(Arrays.asList(repositoryNamesString.split("\\s*,\\s*")));
+        if (parallelRepositories == null)
+            parallelRepositories = 1;
+        if (repositorySource == null)
+            repositorySource = "database";
+        if (!repositorySource.equals("database") && !repositorySource.equals("git"))
+            throw new IOException("Repository source must be database or git");
+        if (isGitHistory() && (repositoryNames.size() != 1 || repositoryNamePattern != null))
+            throw new IOException("Repository source git needs exactly one repository name");
+        if (isGitHistory() && repositoryUrl == null)
+            throw new IOException("Repository url not found in config");
+        if (isGitHistory() && repositoryId == null)
+            throw new IOException("Repository id not found in config");
 
         if (partitions == null)
             partitions = 250;
@@ -116,6 +193,39 @@ public class Config {
             maxNGramSize = 5;
         if (maxNGramFieldSize == null)
             maxNGramFieldSize = 500;
+        // only content shared between repositories is parsed twice, within a repository every blob is parsed once
+        if (astCacheSize == null)
+            astCacheSize = 0L;
+        // 0 disables the limit
+        if (syntaxCacheSize == null)
+            syntaxCacheSize = 0L;
+        if (streamHistoryFeatures == null)
+            streamHistoryFeatures = false;
+        if (resolveBindings == null)
+            resolveBindings = false;
+        if (statementsRecovery == null)
+            statementsRecovery = false;
+
+        if (blobIndex == null)
+            blobIndex = false;
+        if (persistBlobIndex == null)
+            persistBlobIndex = false;
+
+        // 0 disables a limit
+        if (slowLaneFileSize == null)
+            slowLaneFileSize = 0L;
+        if (lexicalOnlyFileSize == null)
+            lexicalOnlyFileSize = 0L;
+        if (maxFileSize == null)
+            maxFileSize = 0L;
+        if (parseTimeout == null)
+            parseTimeout = 0L;
+        if (extractTimeout == null)
+            extractTimeout = 0L;
+        if (maxAstNodes == null)
+            maxAstNodes = 0L;
+        if (quarantineReport == null)
+            quarantineReport = "quarantine.csv";
 
     }
 
@@ -123,8 +233,38 @@ public class Config {
         return configFile;
     }
 
+    /**
+     * @return the first repository name
+     */
     public String getRepositoryName() {
-        return repositoryName;
+        return repositoryNames.get(0);
+    }
+
+    public List<String> getRepositoryNames() {
+        return repositoryNames;
+    }
+
+    public String getRepositoryNamePattern() {
+        return repositoryNamePattern;
+    }
+
+    public Integer getParallelRepositories() {
+        return parallelRepositories;
+    }
+
+    /**
+     * @return true if commits and versions are read from the git history instead of the database
+     */
+    public boolean isGitHistory() {
+        return repositorySource.equals("git");
+    }
+
+    public String getRepositoryUrl() {
+        return repositoryUrl;
+    }
+
+    public Integer getRepositoryId() {
+        return repositoryId;
     }
 
     public Integer getPartitions() {
@@ -139,6 +279,49 @@ public class Config {
         return maxNGramFieldSize;
     }
 
+    /**
+     * @return estimated heap bytes of the parsed files kept for content shared between repositories, 0 disables the cache
+     */
+    public Long getAstCacheSize() {
+        return astCacheSize;
+    }
+
+    /**
+     * @return directory of the syntax cache, null if the cache is disabled
+     */
+    public String getSyntaxCacheDirectory() {
+        return syntaxCacheDirectory;
+    }
+
+    /**
+     * @return bytes of all segments of the syntax cache, no more entries are appended beyond, 0 for no limit
+     */
+    public Long getSyntaxCacheSize() {
+        return syntaxCacheSize;
+    }
+
+    /**
+     * @return true if the history features are extracted per file in the order of its commits after all content features
+     */
+    public Boolean getStreamHistoryFeatures() {
+        return streamHistoryFeatures;
+    }
+
+    public Boolean getResolveBindings() {
+        return resolveBindings;
+    }
+
+    public Boolean getStatementsRecovery() {
+        return statementsRecovery;
+    }
+
+    /**
+     * @return java version of the source code, null for the default of the parser
+     */
+    public String getSourceLevel() {
+        return sourceLevel;
+    }
+
     public String getDatabaseDialect() {
         return databaseDialect;
     }
@@ -170,4 +353,64 @@ public class Config {
     public String getLogLevel() {
         return logLevel;
     }
+
+    public Long getSlowLaneFileSize() {
+        return slowLaneFileSize;
+    }
+
+    public Long getLexicalOnlyFileSize() {
+        return lexicalOnlyFileSize;
+    }
+
+    public Long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public Long getParseTimeout() {
+        return parseTimeout;
+    }
+
+    public Long getExtractTimeout() {
+        return extractTimeout;
+    }
+
+    public Long getMaxAstNodes() {
+        return maxAstNodes;
+    }
+
+    public String getQuarantineReport() {
+        return quarantineReport;
+    }
+
+    public Long getPackedGitLimit() {
+        return packedGitLimit;
+    }
+
+    public Integer getPackedGitWindowSize() {
+        return packedGitWindowSize;
+    }
+
+    public Integer getPackedGitOpenFiles() {
+        return packedGitOpenFiles;
+    }
+
+    public Boolean getPackedGitMMAP() {
+        return packedGitMMAP;
+    }
+
+    public Integer getDeltaBaseCacheLimit() {
+        return deltaBaseCacheLimit;
+    }
+
+    public Integer getStreamFileThreshold() {
+        return streamFileThreshold;
+    }
+
+    public Boolean getBlobIndex() {
+        return blobIndex;
+    }
+
+    public Boolean getPersistBlobIndex() {
+        return persistBlobIndex;
+    }
 }
@@ -0,0 +1,325 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An abstract syntax tree flattened to parallel int arrays, one entry per node in the order of a walk (preorder).
+ * A node is its position in the arrays, the compilation unit is node 0.
+ * - the subtree of a node are the nodes from the node until its end, so the first child is the next node
+ *   and the next sibling is the end of a node
+ * - the location of a node is the id of the structural property of its parent it is in, e.g. Block.STATEMENTS_PROPERTY
+ * The nodes are the same the AbstractSyntaxTreeWalker visits. A tree is immutable, serializable
+ * and does not refer to the JDT tree it was built from.
+ */
+public class FlatAbstractSyntaxTree implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // structural property --> id, the ids are the same in every run with the same JDT version
+    private static final Map<StructuralPropertyDescriptor, Integer> PROPERTYIDS = createPropertyIds();
+
+    private static final int INTERFACE = 1;
+
+    private final int[] types;
+    private final int[] parents;
+    private final int[] starts;
+    private final int[] lengths;
+    private final int[] depths;
+    private final int[] locations;
+    private final int[] ends;
+    private final int[] flags;
+
+    private FlatAbstractSyntaxTree(int[] types, int[] parents, int[] starts, int[] lengths, int[] depths, int[] locations, int[] ends, int[] flags) {
+        this.types = types;
+        this.parents = parents;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.depths = depths;
+        this.locations = locations;
+        this.ends = ends;
+        this.flags = flags;
+    }
+
+    /**
+     * Flatten a tree with a walk of its own
+     * @param ast the tree
+     * @return the flat tree
+     */
+    public static FlatAbstractSyntaxTree of(CompilationUnit ast) {
+        Builder builder = new Builder();
+        AbstractSyntaxTreeWalker.walk(ast, builder);
+        return builder.build();
+    }
+
+    /**
+     * @param property a structural property of a node type, e.g. Block.STATEMENTS_PROPERTY
+     * @return id of the property, as returned by getLocation
+     */
+    public static int getPropertyId(StructuralPropertyDescriptor property) {
+        Integer id = PROPERTYIDS.get(property);
+        if (id == null)
+            throw new IllegalArgumentException("Unknown structural property " + property);
+        return id;
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * @param node a node
+     * @return node type of ASTNode, e.g. ASTNode.IF_STATEMENT
+     */
+    public int getNodeType(int node) {
+        return types[node];
+    }
+
+    /**
+     * @param node a node
+     * @return the parent node, -1 for the compilation unit
+     */
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * @param node a node
+     * @return position of the first char of the node in the code
+     */
+    public int getStart(int node) {
+        return starts[node];
+    }
+
+    /**
+     * @param node a node
+     * @return number of chars of the node in the code
+     */
+    public int getLength(int node) {
+        return lengths[node];
+    }
+
+    /**
+     * @param node a node
+     * @return number of ancestors of the node, 0 for the compilation unit
+     */
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    /**
+     * @param node a node
+     * @return id of the property of the parent the node is in, -1 for the compilation unit
+     */
+    public int getLocation(int node) {
+        return locations[node];
+    }
+
+    /**
+     * @param node a node
+     * @return the first node after the subtree of the node
+     */
+    public int getEnd(int node) {
+        return ends[node];
+    }
+
+    /**
+     * @param node a type declaration
+     * @return true if the type is an interface
+     */
+    public boolean isInterface(int node) {
+        return (flags[node] & INTERFACE) != 0;
+    }
+
+    /**
+     * @param node a node
+     * @return the first child of the node, -1 if it has none
+     */
+    public int getFirstChild(int node) {
+        return node + 1 < ends[node] ? node + 1 : -1;
+    }
+
+    /**
+     * @param node a node
+     * @return the next child of the parent of the node, -1 if it is the last one
+     */
+    public int getNextSibling(int node) {
+        int parent = parents[node];
+        return parent >= 0 && ends[node] < ends[parent] ? ends[node] : -1;
+    }
+
+    /**
+     * @param node a node
+     * @param property id of a property
+     * @return the first child of the node in the property, -1 if the property is empty
+     */
+    public int getChild(int node, int property) {
+        for (int child = getFirstChild(node); child >= 0; child = getNextSibling(child)) {
+            if (locations[child] == property)
+                return child;
+        }
+        return -1;
+    }
+
+    /**
+     * @param node a node
+     * @param property id of a property
+     * @return number of children of the node in the property
+     */
+    public int countChildren(int node, int property) {
+        int count = 0;
+        for (int child = getFirstChild(node); child >= 0; child = getNextSibling(child)) {
+            if (locations[child] == property)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param node a node
+     * @param property id of a property
+     * @param nodeType node type of ASTNode
+     * @return number of children of the node in the property with the node type
+     */
+    public int countChildren(int node, int property, int nodeType) {
+        int count = 0;
+        for (int child = getFirstChild(node); child >= 0; child = getNextSibling(child)) {
+            if (locations[child] == property && types[child] == nodeType)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write the tree for the SyntaxCache
+     * @param out the stream
+     * @throws IOException if the tree could not be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        for (int[] values : new int[][] { types, parents, starts, lengths, depths, locations, ends, flags })
+            SyntaxCache.writeInts(out, values);
+    }
+
+    /**
+     * Read a tree written by write
+     * @param in the buffer at the tree
+     * @return the tree
+     */
+    static FlatAbstractSyntaxTree read(ByteBuffer in) {
+        return new FlatAbstractSyntaxTree(SyntaxCache.readInts(in), SyntaxCache.readInts(in), SyntaxCache.readInts(in),
+                SyntaxCache.readInts(in), SyntaxCache.readInts(in), SyntaxCache.readInts(in), SyntaxCache.readInts(in),
+                SyntaxCache.readInts(in));
+    }
+
+    /**
+     * Number all structural properties of all node types
+     * @return property --> id
+     */
+    private static Map<StructuralPropertyDescriptor, Integer> createPropertyIds() {
+        Map<StructuralPropertyDescriptor, Integer> ids = new HashMap<StructuralPropertyDescriptor, Integer>();
+        AST ast = AST.newAST(AST.JLS8);
+        // the node types are numbered from 1 without gaps
+        for (int nodeType = 1; isNodeType(nodeType); nodeType++) {
+            List<?> properties;
+            try {
+                properties = ast.createInstance(nodeType).structuralPropertiesForType();
+            } catch (RuntimeException e) {
+                // no node type of this api level
+                continue;
+            }
+            for (Object property : properties)
+                ids.putIfAbsent((StructuralPropertyDescriptor) property, ids.size());
+        }
+        return ids;
+    }
+
+    /**
+     * @param nodeType a number
+     * @return true if the number is a node type of ASTNode
+     */
+    private static boolean isNodeType(int nodeType) {
+        try {
+            ASTNode.nodeClassForType(nodeType);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Flattens a tree while it is walked, the walk can be shared with other listeners
+     */
+    public static class Builder implements IAbstractSyntaxTreeListener {
+        private int size;
+        private int[] types = new int[256];
+        private int[] parents = new int[256];
+        private int[] starts = new int[256];
+        private int[] lengths = new int[256];
+        private int[] depths = new int[256];
+        private int[] locations = new int[256];
+        private int[] ends = new int[256];
+        private int[] flags = new int[256];
+        // the nodes the walk is in right now
+        private int[] open = new int[64];
+        private int depth;
+
+        @Override
+        public void enter(ASTNode node) {
+            if (size == types.length)
+                grow();
+            if (depth == open.length)
+                open = Arrays.copyOf(open, depth * 2);
+
+            types[size] = node.getNodeType();
+            parents[size] = depth == 0 ? -1 : open[depth - 1];
+            starts[size] = node.getStartPosition();
+            lengths[size] = node.getLength();
+            depths[size] = depth;
+            locations[size] = node.getLocationInParent() == null ? -1 : getPropertyId(node.getLocationInParent());
+            if (node.getNodeType() == ASTNode.TYPE_DECLARATION && ((TypeDeclaration) node).isInterface())
+                flags[size] |= INTERFACE;
+            open[depth++] = size++;
+        }
+
+        @Override
+        public void exit(ASTNode node) {
+            ends[open[--depth]] = size;
+        }
+
+        /**
+         * @return the flat tree of the walk
+         */
+        public FlatAbstractSyntaxTree build() {
+            return new FlatAbstractSyntaxTree(Arrays.copyOf(types, size), Arrays.copyOf(parents, size),
+                    Arrays.copyOf(starts, size), Arrays.copyOf(lengths, size), Arrays.copyOf(depths, size),
+                    Arrays.copyOf(locations, size), Arrays.copyOf(ends, size), Arrays.copyOf(flags, size));
+        }
+
+        private void grow() {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            locations = Arrays.copyOf(locations, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+    }
+}
@@ -24,7 +24,10 @@ import java.util.List;
  * First and foremost, it loads the configuration and stores the sessionFactory.
  */
 public class HibernateUtil {
+    private static final int DEFAULTBATCHSIZE = 50;
+
     private static SessionFactory sessionFactory;
+    private static int batchSize;
 
     /*
     Not sure if this is the best solution, but it seemed to be the most sensible approach from
@@ -46,6 +49,8 @@ public class HibernateUtil {
         configuration.setProperty("hibernate.connection.username", FeatureExtractor.getCfg().getDatabaseUser());
         configuration.setProperty("hibernate.connection.password", FeatureExtractor.getCfg().getDatabaseUserPassword());
         configuration.configure();
+        String batchSizeProperty = configuration.getProperty("hibernate.jdbc.batch_size");
+        batchSize = batchSizeProperty != null ? Integer.parseInt(batchSizeProperty.trim()) : DEFAULTBATCHSIZE;
 
         StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
         sessionFactory = configuration.buildSessionFactory(serviceRegistry);
@@ -60,6 +65,15 @@ public class HibernateUtil {
         return sessionFactory;
     }
 
+    /**
+     * Return the jdbc batch size, a session which saves many entities should be flushed and cleared after so many.
+     *
+     * @return The batch size, at least 1
+     */
+    public static int getBatchSize() {
+        return Math.max(batchSize, 1);
+    }
+
     /**
      * Open a new DB session with the active sessionFactory.
      *
@@ -0,0 +1,21 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+
+/**
+ * Gets the nodes of an abstract syntax tree from AbstractSyntaxTreeWalker.
+ * Every node is entered before its children and exited after them.
+ */
+public interface IAbstractSyntaxTreeListener {
+
+    /**
+     * @param node the node, its children follow
+     */
+    void enter(ASTNode node);
+
+    /**
+     * @param node the node, all its children are done
+     */
+    default void exit(ASTNode node) {
+    }
+}
@@ -0,0 +1,164 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.eclipse.jdt.core.dom.Comment;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The comments of a file, found by one pass of the java scanner without building an ast.
+ * The comments are the same the parser reports in the comment list of a compilation unit.
+ */
+public class LexicalScan {
+
+    private final int[] commentStarts;
+    private final int[] commentLengths;
+    private final boolean[] lineComments;
+
+    private LexicalScan(int[] commentStarts, int[] commentLengths, boolean[] lineComments) {
+        this.commentStarts = commentStarts;
+        this.commentLengths = commentLengths;
+        this.lineComments = lineComments;
+    }
+
+    /**
+     * Scan code with the source level of the default parser options
+     * @param code as char array
+     * @return the comments of the code
+     */
+    public static LexicalScan scan(char[] code) {
+        return scan(code, AbstractSyntaxTreeUtil.getDefaultOptions().getSourceLevel());
+    }
+
+    /**
+     * Scan code, a token the scanner does not understand is skipped like the parser does
+     * @param code as char array
+     * @param sourceLevel java version of the source code, e.g. 1.8
+     * @return the comments of the code
+     */
+    public static LexicalScan scan(char[] code, String sourceLevel) {
+        IScanner scanner = ToolFactory.createScanner(true, false, false, sourceLevel, sourceLevel);
+        scanner.setSource(code);
+
+        int count = 0;
+        int[] starts = new int[16];
+        int[] lengths = new int[16];
+        boolean[] lines = new boolean[16];
+        int token = 0;
+        while (token != ITerminalSymbols.TokenNameEOF) {
+            try {
+                token = scanner.getNextToken();
+            } catch (InvalidInputException e) {
+                // e.g. an unterminated string, the scanner goes on after it
+                continue;
+            }
+            switch (token) {
+                case ITerminalSymbols.TokenNameCOMMENT_LINE:
+                case ITerminalSymbols.TokenNameCOMMENT_BLOCK:
+                case ITerminalSymbols.TokenNameCOMMENT_JAVADOC:
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        lengths = Arrays.copyOf(lengths, count * 2);
+                        lines = Arrays.copyOf(lines, count * 2);
+                    }
+                    int start = scanner.getCurrentTokenStartPosition();
+                    int end = scanner.getCurrentTokenEndPosition() + 1;
+                    // the scanner counts the line break to a line comment, the parser does not
+                    if (token == ITerminalSymbols.TokenNameCOMMENT_LINE) {
+                        while (end > start && (code[end - 1] == '\n' || code[end - 1] == '\r'))
+                            end--;
+                    }
+                    starts[count] = start;
+                    lengths[count] = end - start;
+                    lines[count] = token == ITerminalSymbols.TokenNameCOMMENT_LINE;
+                    count++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new LexicalScan(Arrays.copyOf(starts, count), Arrays.copyOf(lengths, count), Arrays.copyOf(lines, count));
+    }
+
+    /**
+     * Take the comments of a file which is parsed already
+     * @param ast abstract syntax tree (Compilation unit) of the file
+     * @return the comments of the ast
+     */
+    public static LexicalScan of(CompilationUnit ast) {
+        List<?> comments = ast.getCommentList();
+        int count = comments == null ? 0 : comments.size();
+        int[] starts = new int[count];
+        int[] lengths = new int[count];
+        boolean[] lines = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            Comment comment = (Comment) comments.get(i);
+            starts[i] = comment.getStartPosition();
+            lengths[i] = comment.getLength();
+            lines[i] = comment.isLineComment();
+        }
+        return new LexicalScan(starts, lengths, lines);
+    }
+
+    /**
+     * Write the comments for the SyntaxCache
+     * @param out the stream
+     * @throws IOException if the comments could not be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        SyntaxCache.writeInts(out, commentStarts);
+        SyntaxCache.writeInts(out, commentLengths);
+        for (boolean lineComment : lineComments)
+            out.writeBoolean(lineComment);
+    }
+
+    /**
+     * Read comments written by write
+     * @param in the buffer at the comments
+     * @return the comments
+     */
+    static LexicalScan read(ByteBuffer in) {
+        int[] starts = SyntaxCache.readInts(in);
+        int[] lengths = SyntaxCache.readInts(in);
+        boolean[] lines = new boolean[starts.length];
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = in.get() != 0;
+        return new LexicalScan(starts, lengths, lines);
+    }
+
+    public int getCommentCount() {
+        return commentStarts.length;
+    }
+
+    /**
+     * @param comment number of the comment, in source order
+     * @return position of the first char of the comment
+     */
+    public int getCommentStart(int comment) {
+        return commentStarts[comment];
+    }
+
+    /**
+     * @param comment number of the comment, in source order
+     * @return length of the comment, a line comment ends before its line break
+     */
+    public int getCommentLength(int comment) {
+        return commentLengths[comment];
+    }
+
+    /**
+     * @param comment number of the comment, in source order
+     * @return true for a line comment, false for a block or javadoc comment
+     */
+    public boolean isLineComment(int comment) {
+        return lineComments[comment];
+    }
+}
@@ -0,0 +1,207 @@
+package ba.ciel5.featureExtractor.utils;
+
+import java.util.Arrays;
+
+/**
+ * The lines of a file, built once per file in one pass over the code and its comment mask.
+ * The lines are the ones of code.split("\n"): a line ends before its '\n' (a '\r' stays part of the line),
+ * empty lines at the end of the file do not count, a file without line break is one line.
+ * A line is blank if trim would leave nothing of it.
+ */
+public class LineIndex {
+
+    private static final int BLANK = 1;
+    private static final int COMMENTONLY = 2;
+
+    private final int[] starts;
+    private final int[] lengths;
+    private final byte[] flags;
+    // positions of all line breaks, including the ones after the last line
+    private final int[] breaks;
+    private final int sourceLines;
+    private final int commentLines;
+    private int[] sortedLengths;
+
+    private LineIndex(int[] starts, int[] lengths, byte[] flags, int[] breaks, int sourceLines, int commentLines) {
+        this.starts = starts;
+        this.lengths = lengths;
+        this.flags = flags;
+        this.breaks = breaks;
+        this.sourceLines = sourceLines;
+        this.commentLines = commentLines;
+    }
+
+    /**
+     * @param comments the comment mask of the code
+     * @param code as char array
+     * @return the lines of the code
+     */
+    public static LineIndex of(CommentMask comments, char[] code) {
+        int breakCount = 0;
+        for (char c : code) {
+            if (c == '\n')
+                breakCount++;
+        }
+
+        int[] breaks = new int[breakCount];
+        int[] starts = new int[breakCount + 1];
+        int[] lengths = new int[breakCount + 1];
+        byte[] flags = new byte[breakCount + 1];
+        int line = 0;
+        int sourceLines = 0;
+        boolean blank = true;
+        boolean commentOnly = true;
+        // like blank, but of the comment-less code whose lines are joined at the end of line comments
+        boolean source = false;
+        for (int i = 0; i <= code.length; i++) {
+            if (i == code.length || code[i] == '\n') {
+                lengths[line] = i - starts[line];
+                flags[line] = (byte) ((blank ? BLANK : 0) | (!blank && commentOnly ? COMMENTONLY : 0));
+                if (i == code.length)
+                    break;
+                breaks[line] = i;
+                starts[++line] = i + 1;
+                blank = true;
+                commentOnly = true;
+                if (!comments.isComment(i)) {
+                    if (source)
+                        sourceLines++;
+                    source = false;
+                }
+            } else if (code[i] > ' ') {
+                blank = false;
+                if (comments.isComment(i))
+                    continue;
+                commentOnly = false;
+                source = true;
+            }
+        }
+        if (source)
+            sourceLines++;
+
+        // split drops the empty lines at the end, unless there is no line break at all
+        int size = breakCount + 1;
+        if (breakCount > 0) {
+            while (size > 0 && lengths[size - 1] == 0)
+                size--;
+        }
+
+        int commentLines = 0;
+        LexicalScan scan = comments.getComments();
+        for (int i = 0; i < scan.getCommentCount(); i++) {
+            int start = Math.max(scan.getCommentStart(i), 0);
+            int end = Math.min(start + scan.getCommentLength(i), code.length);
+            commentLines += countBreaksBefore(breaks, end) - countBreaksBefore(breaks, start) + 1;
+        }
+        return new LineIndex(Arrays.copyOf(starts, size), Arrays.copyOf(lengths, size), Arrays.copyOf(flags, size),
+                breaks, sourceLines, commentLines);
+    }
+
+    /**
+     * @return number of lines (PLOC)
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @param line number of a line, from 0
+     * @return position of the first char of the line
+     */
+    public int getStart(int line) {
+        return starts[line];
+    }
+
+    /**
+     * @param line number of a line, from 0
+     * @return number of chars of the line without its line break
+     */
+    public int getLength(int line) {
+        return lengths[line];
+    }
+
+    /**
+     * @param line number of a line, from 0
+     * @return true if the line has only whitespace
+     */
+    public boolean isBlank(int line) {
+        return (flags[line] & BLANK) != 0;
+    }
+
+    /**
+     * @param line number of a line, from 0
+     * @return true if the line is not blank and everything but whitespace belongs to comments
+     */
+    public boolean isCommentOnly(int line) {
+        return (flags[line] & COMMENTONLY) != 0;
+    }
+
+    /**
+     * @param position position of a char, up to the length of the code
+     * @return number of line breaks before the position, which is the number of its line
+     */
+    public int getLineBreaksBefore(int position) {
+        return countBreaksBefore(breaks, position);
+    }
+
+    /**
+     * @return number of blank lines (BLOC)
+     */
+    public int getBlankLines() {
+        int blankLines = 0;
+        for (byte flag : flags) {
+            if ((flag & BLANK) != 0)
+                blankLines++;
+        }
+        return blankLines;
+    }
+
+    /**
+     * @return number of lines of the comment-less code which are not blank (SLOC), the line of a line comment
+     *         is joined with the next line in the comment-less code
+     */
+    public int getSourceLines() {
+        return sourceLines;
+    }
+
+    /**
+     * @return number of lines of all comments, a comment counts each of its lines once (CLOC)
+     */
+    public int getCommentLines() {
+        return commentLines;
+    }
+
+    /**
+     * @return length of the shortest line, 0 without lines
+     */
+    public int getMinLength() {
+        return starts.length == 0 ? 0 : getSortedLengths()[0];
+    }
+
+    /**
+     * @return length of the longest line, 0 without lines
+     */
+    public int getMaxLength() {
+        return starts.length == 0 ? 0 : getSortedLengths()[starts.length - 1];
+    }
+
+    /**
+     * @return median of the line lengths, 0 without lines
+     */
+    public double getMedianLength() {
+        return starts.length == 0 ? 0 : Average.getMedianFromInts(getSortedLengths());
+    }
+
+    private static int countBreaksBefore(int[] breaks, int position) {
+        int found = Arrays.binarySearch(breaks, position);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    private int[] getSortedLengths() {
+        if (sortedLengths == null) {
+            sortedLengths = lengths.clone();
+            Arrays.sort(sortedLengths);
+        }
+        return sortedLengths;
+    }
+}
@@ -0,0 +1,88 @@
+package ba.ciel5.featureExtractor.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts every occurrence of a set of patterns in a text, overlapping occurrences included.
+ * The patterns are a trie in one transition table, a match walks the trie from every position of the text
+ * and stops at the first char without transition, so a pass over the text allocates nothing.
+ * Patterns have to be ascii, a matcher is immutable and can be shared by all threads.
+ */
+public class MultiPatternMatcher {
+
+    private static final int ALPHABET = 128;
+
+    private final String[] patterns;
+    // node * ALPHABET + char --> next node, 0 if there is no transition (the root is never a target)
+    private final int[] transitions;
+    // node --> the pattern ending in it, -1 if none does
+    private final int[] matches;
+
+    /**
+     * @param patterns the patterns, a pattern given twice is counted once
+     */
+    public MultiPatternMatcher(List<String> patterns) {
+        this.patterns = patterns.toArray(new String[patterns.size()]);
+        int maxNodes = 1;
+        for (String pattern : patterns)
+            maxNodes += pattern.length();
+
+        int[] transitions = new int[maxNodes * ALPHABET];
+        int[] matches = new int[maxNodes];
+        Arrays.fill(matches, -1);
+        int nodes = 1;
+        for (int p = 0; p < this.patterns.length; p++) {
+            int node = 0;
+            for (char c : this.patterns[p].toCharArray()) {
+                if (c >= ALPHABET)
+                    throw new IllegalArgumentException("Pattern " + this.patterns[p] + " is not ascii");
+                if (transitions[node * ALPHABET + c] == 0)
+                    transitions[node * ALPHABET + c] = nodes++;
+                node = transitions[node * ALPHABET + c];
+            }
+            if (matches[node] < 0)
+                matches[node] = p;
+        }
+        this.transitions = Arrays.copyOf(transitions, nodes * ALPHABET);
+        this.matches = Arrays.copyOf(matches, nodes);
+    }
+
+    /**
+     * @return number of patterns
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @param pattern number of a pattern, in the order they were given
+     * @return the pattern
+     */
+    public String getPattern(int pattern) {
+        return patterns[pattern];
+    }
+
+    /**
+     * Count the occurrences of all patterns in a text
+     * @param text the text
+     * @return pattern number --> occurrences
+     */
+    public int[] count(char[] text) {
+        int[] counts = new int[patterns.length];
+        for (int start = 0; start < text.length; start++) {
+            int node = 0;
+            for (int i = start; i < text.length; i++) {
+                char c = text[i];
+                if (c >= ALPHABET)
+                    break;
+                node = transitions[node * ALPHABET + c];
+                if (node == 0)
+                    break;
+                if (matches[node] >= 0)
+                    counts[matches[node]]++;
+            }
+        }
+        return counts;
+    }
+}
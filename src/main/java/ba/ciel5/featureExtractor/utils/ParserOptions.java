@@ -0,0 +1,98 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.ASTParser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of the java parser. An instance is immutable and can be shared by all threads.
+ * - bindings are off, no feature group uses them and without a classpath they cannot be resolved
+ * - without a source level the compiler options of JavaCore are used, like a parser without options
+ */
+public class ParserOptions {
+
+    private final boolean resolveBindings;
+    private final boolean statementsRecovery;
+    private final boolean ignoreMethodBodies;
+    private final Map<String, String> compilerOptions;
+
+    /**
+     * @param resolveBindings true to resolve bindings
+     * @param statementsRecovery true to recover statements with syntax errors
+     * @param sourceLevel java version of the source code, e.g. 1.8, null for the default of JavaCore
+     */
+    public ParserOptions(boolean resolveBindings, boolean statementsRecovery, String sourceLevel) {
+        this(resolveBindings, statementsRecovery, false, getCompilerOptions(sourceLevel));
+    }
+
+    private ParserOptions(boolean resolveBindings, boolean statementsRecovery, boolean ignoreMethodBodies, Map<String, String> compilerOptions) {
+        this.resolveBindings = resolveBindings;
+        this.statementsRecovery = statementsRecovery;
+        this.ignoreMethodBodies = ignoreMethodBodies;
+        this.compilerOptions = compilerOptions;
+    }
+
+    /**
+     * @return options without bindings, without statements recovery and with the compiler options of JavaCore
+     */
+    public static ParserOptions defaults() {
+        return new ParserOptions(false, false, null);
+    }
+
+    /**
+     * @param ignoreMethodBodies true to leave the method bodies empty, all comments are still reported
+     * @return the same options with or without method bodies
+     */
+    public ParserOptions withIgnoreMethodBodies(boolean ignoreMethodBodies) {
+        if (ignoreMethodBodies == this.ignoreMethodBodies)
+            return this;
+        return new ParserOptions(resolveBindings, statementsRecovery, ignoreMethodBodies, compilerOptions);
+    }
+
+    /**
+     * Set the options on a parser. A parser forgets its options after every parse.
+     * @param parser the parser
+     */
+    void configure(ASTParser parser) {
+        parser.setResolveBindings(resolveBindings);
+        parser.setStatementsRecovery(statementsRecovery);
+        parser.setIgnoreMethodBodies(ignoreMethodBodies);
+        parser.setCompilerOptions(compilerOptions);
+    }
+
+    public boolean isResolveBindings() {
+        return resolveBindings;
+    }
+
+    public boolean isStatementsRecovery() {
+        return statementsRecovery;
+    }
+
+    public boolean isIgnoreMethodBodies() {
+        return ignoreMethodBodies;
+    }
+
+    /**
+     * @return java version of the source code, e.g. 1.8
+     */
+    public String getSourceLevel() {
+        return compilerOptions.get(JavaCore.COMPILER_SOURCE);
+    }
+
+    /**
+     * @param sourceLevel java version of the source code, null for the default of JavaCore
+     * @return the compiler options
+     */
+    private static Map<String, String> getCompilerOptions(String sourceLevel) {
+        // JavaCore returns a raw Hashtable of string options
+        @SuppressWarnings("unchecked")
+        Map<String, String> defaults = JavaCore.getOptions();
+        Map<String, String> options = new HashMap<String, String>(defaults);
+        if (sourceLevel != null)
+            JavaCore.setComplianceOptions(sourceLevel, options);
+        return Collections.unmodifiableMap(options);
+    }
+}
@@ -0,0 +1,480 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the syntax of files on disk, so a later run needs neither the git read nor the parse of a file it has seen.
+ * An entry is the flat ast, the comments and the source code of a blob, keyed by the blob id.
+ * The entries are appended to segment files, one series of segments per parser settings:
+ * - a segment starts with a header of the settings, then come the records: length, blob id, entry
+ * - a segment is memory mapped for reads, the records appended later are mapped on demand
+ * - a segment is full at SEGMENTSIZE bytes, then the next one is started
+ * - a record cut off by a crash is dropped when the segment is opened again
+ * - a record replaced by a later one of the same blob stays in its segment, only deleting the segments frees it
+ * - no record is appended once all segments of the settings reach the size limit
+ * The cache is safe to use from several threads. A lock file of the settings keeps out other processes,
+ * a cache whose lock is held cannot be opened.
+ */
+public class SyntaxCache {
+
+    private static final int MAGIC = 0x46455343;
+    // 2: the comments without a token count
+    private static final int FORMAT = 2;
+    // a mapped buffer holds at most 2 GB
+    private static final long SEGMENTSIZE = 1L << 30;
+
+    private final File directory;
+    private final String settings;
+    private final String prefix;
+    // bytes of all segments, 0 for no limit
+    private final long maxSize;
+    private final FileChannel lockChannel;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    // blob id --> location of its latest record
+    private final Map<ObjectId, Location> index = new ConcurrentHashMap<ObjectId, Location>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Open the segments of the settings in a directory, the directory is created if it does not exist
+     * @param directory the cache directory
+     * @param options the parser options the entries are parsed with
+     * @param maxSize bytes of all segments of the settings, 0 for no limit
+     * @throws IOException if a segment could not be opened or another process uses the cache
+     */
+    public SyntaxCache(File directory, ParserOptions options, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        // the property ids of the flat ast depend on the JDT version
+        this.settings = String.format("format %d, jdt %s, api level %d, bindings %b, recovery %b, ignore method bodies %b, source %s",
+                FORMAT, getJdtVersion(), AST.JLS8, options.isResolveBindings(), options.isStatementsRecovery(),
+                options.isIgnoreMethodBodies(), options.getSourceLevel());
+        this.prefix = "syntax-" + String.format("%08x", settings.hashCode()) + "-";
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cache directory " + directory + " could not be created.");
+
+        File lockFile = new File(directory, prefix + "lock");
+        lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another cache of this process
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Cache " + lockFile + " is locked by another process.");
+        }
+
+        try {
+            for (int number = 0; ; number++) {
+                File file = getSegmentFile(number);
+                if (!file.exists())
+                    break;
+                Segment segment = new Segment(number, file);
+                segment.open();
+                segments.add(segment);
+            }
+            if (segments.isEmpty() || segments.get(segments.size() - 1).isFull())
+                addSegment();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param blobId the blob
+     * @return true if the blob is cached
+     */
+    public boolean contains(AnyObjectId blobId) {
+        return index.containsKey(blobId);
+    }
+
+    /**
+     * @param blobId the blob
+     * @return true if the blob is cached with its flat ast
+     */
+    public boolean containsTree(AnyObjectId blobId) {
+        Location location = index.get(blobId);
+        return location != null && location.tree;
+    }
+
+    /**
+     * @param blobId the blob
+     * @return the cached entry of the blob, null if it is not cached
+     */
+    public Entry get(AnyObjectId blobId) {
+        Location location = index.get(blobId);
+        if (location == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            Entry entry = location.segment.read(location.offset, location.length);
+            hits.incrementAndGet();
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            // a damaged record is parsed again and appended anew
+            index.remove(blobId, location);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Append an entry, a later entry of the same blob replaces the earlier one.
+     * The entry is skipped if it would grow the segments beyond the size limit.
+     * @param blobId the blob
+     * @param entry the syntax of the blob
+     * @throws IOException if the entry could not be written
+     */
+    public void put(AnyObjectId blobId, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+        blobId.copyRawTo(id, 0);
+        out.write(id);
+        entry.write(out);
+        out.flush();
+        byte[] record = bytes.toByteArray();
+        // the record would not fit into an empty segment
+        if (record.length + 64L > SEGMENTSIZE)
+            return;
+
+        synchronized (segments) {
+            if (maxSize > 0 && getSegmentsSize() + 4 + record.length > maxSize) {
+                skipped.incrementAndGet();
+                return;
+            }
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.size + 4 + record.length > SEGMENTSIZE)
+                segment = addSegment();
+            long offset = segment.append(record);
+            index.put(blobId.copy(), new Location(segment, offset, record.length, entry.getTree() != null));
+        }
+        appends.incrementAndGet();
+    }
+
+    /**
+     * Close all segments and release the lock
+     */
+    public void close() {
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                try {
+                    if (segment.channel != null)
+                        segment.channel.close();
+                } catch (IOException e) {
+                    // nothing to lose, every append is written at once
+                }
+            }
+            try {
+                // closing the channel releases the lock
+                lockChannel.close();
+            } catch (IOException e) {
+                // the lock ends with the process anyway
+            }
+        }
+    }
+
+    /**
+     * @return the parser settings of the entries
+     */
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return number of cached blobs
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getAppends() {
+        return appends.get();
+    }
+
+    /**
+     * @return number of entries not appended because of the size limit
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the jar of JDT, e.g. org.eclipse.jdt.core-3.10.0.v20140604-1726.jar
+     */
+    private static String getJdtVersion() {
+        try {
+            return new File(AST.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getName();
+        } catch (Exception e) {
+            return String.valueOf(AST.class.getPackage().getImplementationVersion());
+        }
+    }
+
+    /**
+     * @return bytes of all segments, the caller holds the lock of the segments
+     */
+    private long getSegmentsSize() {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    private File getSegmentFile(int number) {
+        return new File(directory, prefix + number + ".seg");
+    }
+
+    private Segment addSegment() throws IOException {
+        int number = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+        Segment segment = new Segment(number, getSegmentFile(number));
+        segment.create();
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Write ints in big endian like a ByteBuffer reads them
+     */
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + values.length * 4);
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+        out.write(buffer.array());
+    }
+
+    /**
+     * Read ints written by writeInts
+     */
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        IntBuffer ints = in.asIntBuffer();
+        ints.get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    /**
+     * One segment file
+     */
+    private class Segment {
+        private final int number;
+        private final File file;
+        private FileChannel channel;
+        // bytes of all complete records and the header
+        private long size;
+        private MappedByteBuffer mapped;
+
+        Segment(int number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+
+        /**
+         * Start a new segment with the header of the settings
+         */
+        void create() throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.truncate(0);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeUTF(settings);
+            out.flush();
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+            size = channel.size();
+        }
+
+        /**
+         * Open an existing segment and index its records
+         * @throws IOException if the segment could not be read or is not one of these settings
+         */
+        void open() throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String header;
+            try {
+                if (in.getInt() != MAGIC || in.getInt() != FORMAT)
+                    throw new IOException(file + " is no syntax cache segment of this version");
+                byte[] bytes = new byte[in.getShort() & 0xffff];
+                in.get(bytes);
+                header = new String(bytes, StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                channel.close();
+                throw new IOException(file + " is no syntax cache segment", e);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            if (!settings.equals(header)) {
+                channel.close();
+                throw new IOException(file + " belongs to other parser settings: " + header);
+            }
+
+            byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            while (in.remaining() >= 4) {
+                int position = in.position();
+                int length = in.getInt();
+                if (length <= id.length || length > in.remaining()) {
+                    in.position(position);
+                    break;
+                }
+                in.get(id);
+                index.put(ObjectId.fromRaw(id), new Location(this, position + 4, length, in.get() != 0));
+                in.position(position + 4 + length);
+            }
+            size = in.position();
+            mapped = in;
+            // drop a record cut off by a crash
+            if (size < channel.size())
+                channel.truncate(size);
+        }
+
+        boolean isFull() {
+            return size + 64 > SEGMENTSIZE;
+        }
+
+        /**
+         * @param record blob id and entry
+         * @return offset of the record
+         */
+        long append(byte[] record) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+            buffer.putInt(record.length).put(record).flip();
+            long position = size;
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+            long offset = size + 4;
+            size = position;
+            return offset;
+        }
+
+        /**
+         * @param offset offset of a record
+         * @param length length of the record
+         * @return the entry of the record
+         */
+        Entry read(long offset, int length) throws IOException {
+            ByteBuffer in;
+            synchronized (this) {
+                if (mapped == null || offset + length > mapped.capacity())
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                in = mapped.duplicate();
+            }
+            in.position((int) offset + Constants.OBJECT_ID_LENGTH);
+            in.limit((int) offset + length);
+            return Entry.read(in);
+        }
+    }
+
+    /**
+     * Where the record of a blob is
+     */
+    private static class Location {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        // true if the entry has its flat ast
+        private final boolean tree;
+
+        Location(Segment segment, long offset, int length, boolean tree) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.tree = tree;
+        }
+    }
+
+    /**
+     * The syntax of a file: its flat ast, its comments and its source code
+     */
+    public static class Entry {
+        private final FlatAbstractSyntaxTree tree;
+        private final LexicalScan comments;
+        private final char[] code;
+
+        /**
+         * @param tree the flat ast, null if the file was only scanned
+         * @param comments the comments of the file
+         * @param code the source code of the file
+         */
+        public Entry(FlatAbstractSyntaxTree tree, LexicalScan comments, char[] code) {
+            this.tree = tree;
+            this.comments = comments;
+            this.code = code;
+        }
+
+        /**
+         * @return the flat ast, null if the file was only scanned
+         */
+        public FlatAbstractSyntaxTree getTree() {
+            return tree;
+        }
+
+        public LexicalScan getComments() {
+            return comments;
+        }
+
+        public char[] getCode() {
+            return code;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeBoolean(tree != null);
+            if (tree != null)
+                tree.write(out);
+            comments.write(out);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + code.length * 2);
+            buffer.putInt(code.length);
+            buffer.asCharBuffer().put(code);
+            out.write(buffer.array());
+        }
+
+        static Entry read(ByteBuffer in) {
+            FlatAbstractSyntaxTree tree = in.get() != 0 ? FlatAbstractSyntaxTree.read(in) : null;
+            LexicalScan comments = LexicalScan.read(in);
+            char[] code = new char[in.getInt()];
+            CharBuffer chars = in.asCharBuffer();
+            chars.get(code);
+            return new Entry(tree, comments, code);
+        }
+    }
+}
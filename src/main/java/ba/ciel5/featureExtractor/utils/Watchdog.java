@@ -0,0 +1,238 @@
+package ba.ciel5.featureExtractor.utils;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Enforces the per-file budgets of parsing and extraction, so a single file cannot hold up a partition.
+ * - a parse with a time budget runs on a watchdog thread, the caller stops waiting when the budget is used up.
+ *   The parser of JDT does not stop when it is interrupted, a timed out parse finishes in the background
+ *   and keeps its thread until then. A parse takes one of the parse slots until its thread is done:
+ *   there is a slot for every thread which can parse and as many for timed out parses, a parse waits
+ *   for a free slot before its budget starts, so runaway parses cannot pile up.
+ * - the extraction runs in the calling thread under a deadline of the calling thread. The walk budget is a
+ *   listener which stops a walk over the ast after the deadline or after too many nodes, the work after
+ *   the walk calls checkDeadline.
+ * - a stack overflow, e.g. of deeply nested expressions, exceeds the budget as well
+ * A phase which exceeds its budget throws a BudgetExceededException. 0 disables a budget.
+ */
+public class Watchdog {
+
+    public static final String PARSE = "parse";
+    public static final String EXTRACT = "extract";
+
+    // the walk budget looks at the clock every that many nodes
+    private static final int CLOCKINTERVAL = 1024;
+
+    // the extraction of the calling thread
+    private static final ThreadLocal<Deadline> DEADLINES = new ThreadLocal<Deadline>();
+
+    private final long parseTimeout;
+    private final long extractTimeout;
+    private final long maxAstNodes;
+    private final ThreadPoolExecutor executor;
+    // a permit per parse until its thread is done, timed out parses keep theirs
+    private final Semaphore parseSlots;
+
+    /**
+     * @param parseTimeout milliseconds to parse a file
+     * @param extractTimeout milliseconds to extract all content features of a file
+     * @param maxAstNodes nodes of the ast of a file
+     * @param parseThreads the number of threads which can parse, as many timed out parses can run on
+     */
+    public Watchdog(long parseTimeout, long extractTimeout, long maxAstNodes, int parseThreads) {
+        this.parseTimeout = parseTimeout;
+        this.extractTimeout = extractTimeout;
+        this.maxAstNodes = maxAstNodes;
+        this.parseSlots = new Semaphore(2 * Math.max(parseThreads, 1));
+        AtomicInteger threads = new AtomicInteger();
+        // the slots bound the threads, a timed out parse is replaced by a new thread
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), r -> {
+            Thread thread = new Thread(r, "watchdog-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param parse the parse of a file
+     * @param <T> result of the parse
+     * @return the result
+     * @throws BudgetExceededException if the parse took longer than the parse timeout
+     */
+    public <T> T parse(Supplier<T> parse) {
+        return run(PARSE, parseTimeout, parse);
+    }
+
+    /**
+     * Run the extraction in the calling thread under the extract deadline, its walks should have a walk budget
+     * and the work outside of walks should call checkDeadline
+     * @param extract the extraction of all content features of a file
+     * @param <T> result of the extraction
+     * @return the result
+     * @throws BudgetExceededException if the extraction passed the deadline or overflowed the stack
+     */
+    public <T> T extract(Supplier<T> extract) {
+        Deadline previous = DEADLINES.get();
+        DEADLINES.set(new Deadline(System.currentTimeMillis(), extractTimeout));
+        try {
+            return run(EXTRACT, 0, extract);
+        } finally {
+            if (previous != null)
+                DEADLINES.set(previous);
+            else
+                DEADLINES.remove();
+        }
+    }
+
+    /**
+     * Stop the extraction of the calling thread if it passed its deadline, nothing happens outside of an extraction
+     * @throws BudgetExceededException if the deadline has passed or the thread is interrupted
+     */
+    public static void checkDeadline() {
+        Deadline deadline = DEADLINES.get();
+        if (deadline != null)
+            deadline.check();
+    }
+
+    /**
+     * Create the budget of a walk over an ast, it should be the first listener of the walk.
+     * The time budget is the deadline of the extraction, outside of an extraction it starts now.
+     * @return a listener which throws a BudgetExceededException once the walk exceeds the budget
+     */
+    public IAbstractSyntaxTreeListener createWalkBudget() {
+        Deadline deadline = DEADLINES.get();
+        return new WalkBudget(deadline != null ? deadline : new Deadline(System.currentTimeMillis(), extractTimeout));
+    }
+
+    /**
+     * Stop all watchdog threads, parses still running in the background are interrupted
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run a phase within a time budget
+     * @param phase name of the phase
+     * @param timeout milliseconds, 0 to run the phase in the calling thread without a time budget
+     * @param task the phase
+     * @param <T> result of the phase
+     * @return the result
+     */
+    private <T> T run(String phase, long timeout, Supplier<T> task) {
+        if (timeout > 0) {
+            try {
+                parseSlots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a slot to " + phase, e);
+            }
+        }
+        long start = System.currentTimeMillis();
+        if (timeout <= 0)
+            return runInCallingThread(phase, start, task);
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    parseSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shut down, the caller parses without a time budget
+            parseSlots.release();
+            return runInCallingThread(phase, start, task);
+        }
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new BudgetExceededException(phase, timeout + " ms", System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + phase, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StackOverflowError)
+                throw new BudgetExceededException(phase, "the stack", System.currentTimeMillis() - start);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Run a phase in the calling thread without a time budget
+     * @param phase name of the phase
+     * @param start start of the phase in milliseconds
+     * @param task the phase
+     * @param <T> result of the phase
+     * @return the result
+     */
+    private static <T> T runInCallingThread(String phase, long start, Supplier<T> task) {
+        try {
+            return task.get();
+        } catch (StackOverflowError e) {
+            throw new BudgetExceededException(phase, "the stack", System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * The time budget of an extraction
+     */
+    private static class Deadline {
+        private final long start;
+        // milliseconds, 0 for no time budget
+        private final long timeout;
+
+        Deadline(long start, long timeout) {
+            this.start = start;
+            this.timeout = timeout;
+        }
+
+        void check() {
+            if (Thread.currentThread().isInterrupted())
+                throw new BudgetExceededException(EXTRACT, "its time budget", System.currentTimeMillis() - start);
+            long elapsed = System.currentTimeMillis() - start;
+            if (timeout > 0 && elapsed > timeout)
+                throw new BudgetExceededException(EXTRACT, timeout + " ms", elapsed);
+        }
+    }
+
+    /**
+     * Counts the nodes of a walk and looks at the deadline from time to time
+     */
+    private class WalkBudget implements IAbstractSyntaxTreeListener {
+        private final Deadline deadline;
+        private long nodes;
+
+        WalkBudget(Deadline deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void enter(ASTNode node) {
+            nodes++;
+            if (maxAstNodes > 0 && nodes > maxAstNodes)
+                throw new BudgetExceededException(EXTRACT, maxAstNodes + " ast nodes", System.currentTimeMillis() - deadline.start);
+            if (nodes % CLOCKINTERVAL == 0)
+                deadline.check();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.model.Commit;
+import ba.ciel5.featureExtractor.model.Issue;
+import ba.ciel5.featureExtractor.model.Version;
+import ba.ciel5.featureExtractor.utils.CommitHistoryIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The change rate features of a small history of the file f, the commits are days before the commit c5:
+ * c0 20 days, c1 10 days, c2 7 days (exactly at the threshold of the 7 day window, changes f twice),
+ * c3 and c4 2 days (the same time) and c6 one day after c5.
+ */
+public class ChangeRateFeatureGroupTest {
+
+    private static final long DAY = 24 * 3600 * 1000L;
+    // 2016-01-10 12:00 UTC
+    private static final long TIME = 1452427200000L;
+
+    private TimeZone defaultTimeZone;
+    private List<Commit> commits;
+
+    @org.junit.Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+
+        commits = new ArrayList<Commit>();
+        Commit c0 = addCommit("c0", null, TIME - 20 * DAY, 0, 0, 1, 0);
+        addVersion(c0, "f", 2, 0);
+        Commit c1 = addCommit("c1", "A", TIME - 10 * DAY, 1, 0, 2, 0);
+        addVersion(c1, "f", 10, 1);
+        c1.getIssues().add(new Issue("i1", "", "BUG"));
+        // no file counts, f twice and the lines of another file
+        Commit c2 = addCommit("c2", "B", TIME - 7 * DAY, null, null, null, null);
+        addVersion(c2, "f", 5, 2);
+        addVersion(c2, "f", 1, 1);
+        addVersion(c2, "g", 100, 0);
+        c2.getIssues().add(new Issue("i2", "", "ENHANCEMENT"));
+        c2.getIssues().add(new Issue("i3", "", null));
+        Commit c3 = addCommit("c3", "A", TIME - 2 * DAY, 0, 1, 3, 0);
+        addVersion(c3, "f", 3, 3);
+        Commit c4 = addCommit("c4", "C", TIME - 2 * DAY, 2, 0, 1, 1);
+        addVersion(c4, "f", 4, 0);
+        c4.getIssues().add(new Issue("i4", "", "BUG"));
+        Commit c5 = addCommit("c5", "A", TIME, 0, 0, 1, 0);
+        addVersion(c5, "f", 7, 7);
+        Commit c6 = addCommit("c6", "D", TIME + DAY, 5, 5, 5, 5);
+        addVersion(c6, "f", 50, 50);
+    }
+
+    @org.junit.After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @org.junit.Test
+    public void extract() throws Exception {
+        Map<String, Double> result = extract("c5");
+
+        assertEquals(2.0, result.get("DBLC"), 0.0);
+
+        // nothing in the last day
+        assertEquals(0.0, result.get("NOAL1D"), 0.0);
+        assertEquals(0.0, result.get("NOA1D"), 0.0);
+        assertEquals(0.0, result.get("MedDBOC1D"), 0.0);
+        assertEquals(0.0, result.get("MaxNOFCFOC1D"), 0.0);
+
+        // c3 and c4, c2 is exactly at the threshold and not in range
+        assertEquals(7.0, result.get("NOAL7D"), 0.0);
+        assertEquals(3.0, result.get("NODL7D"), 0.0);
+        assertEquals(2.0, result.get("NOA7D"), 0.0);
+        assertEquals(1.0, result.get("NOB7D"), 0.0);
+        assertEquals(0.0, result.get("NOE7D"), 0.0);
+        assertEquals(2.0, result.get("MinDBOC7D"), 0.0);
+        assertEquals(2.0, result.get("MaxDBOC7D"), 0.0);
+        assertEquals(2.0, result.get("MedDBOC7D"), 0.0);
+        assertEquals(4.0, result.get("NOCF7D"), 0.0);
+
+        // c0 to c4, c2 once, the lines of all versions of the commits
+        assertEquals(125.0, result.get("NOAL30D"), 0.0);
+        assertEquals(7.0, result.get("NODL30D"), 0.0);
+        assertEquals(4.0, result.get("NOA30D"), 0.0);
+        assertEquals(2.0, result.get("NOB30D"), 0.0);
+        assertEquals(1.0, result.get("NOE30D"), 0.0);
+        // days 2, 2, 7, 10, 20
+        assertEquals(2.0, result.get("MinDBOC30D"), 0.0);
+        assertEquals(20.0, result.get("MaxDBOC30D"), 0.0);
+        assertEquals(7.0, result.get("MedDBOC30D"), 0.0);
+        assertEquals(8.2, result.get("MeanDBOC30D"), 1e-9);
+        // changed files 1, 2, 0, 3, 1
+        assertEquals(7.0, result.get("NOCF30D"), 0.0);
+        assertEquals(0.0, result.get("MinNOFCFOC30D"), 0.0);
+        assertEquals(3.0, result.get("MaxNOFCFOC30D"), 0.0);
+        assertEquals(1.0, result.get("MedNOFCFOC30D"), 0.0);
+        assertEquals(1.4, result.get("MeanNOFCFOC30D"), 1e-9);
+        // added files 0, 1, 0, 0, 2
+        assertEquals(3.0, result.get("NOAF30D"), 0.0);
+        assertEquals(0.0, result.get("MedNOFAFOC30D"), 0.0);
+        assertEquals(2.0, result.get("MaxNOFAFOC30D"), 0.0);
+        assertEquals(1.0, result.get("NORF30D"), 0.0);
+        assertEquals(1.0, result.get("NODF30D"), 0.0);
+    }
+
+    @org.junit.Test
+    public void extractSameTime() throws Exception {
+        // c3 has the same time as c4 and is not older
+        Map<String, Double> result = extract("c4");
+
+        assertEquals(5.0, result.get("DBLC"), 0.0);
+        // c2 only, an odd window
+        assertEquals(1.0, result.get("NOA7D"), 0.0);
+        assertEquals(5.0, result.get("MedDBOC7D"), 0.0);
+        // c0, c1 and c2
+        assertEquals(3.0, result.get("NOA30D"), 0.0);
+        assertEquals(8.0, result.get("MedDBOC30D"), 0.0);
+    }
+
+    @org.junit.Test
+    public void extractEvenWindow() throws Exception {
+        Map<String, Double> result = extract("c2");
+
+        assertEquals(3.0, result.get("DBLC"), 0.0);
+        // c0 and c1: days 3 and 13
+        assertEquals(3.0, result.get("MinDBOC30D"), 0.0);
+        assertEquals(13.0, result.get("MaxDBOC30D"), 0.0);
+        assertEquals(8.0, result.get("MedDBOC30D"), 0.0);
+        assertEquals(8.0, result.get("MeanDBOC30D"), 1e-9);
+        // changed files 1 and 2
+        assertEquals(1.5, result.get("MedNOFCFOC30D"), 0.0);
+    }
+
+    @org.junit.Test
+    public void extractFirstCommit() throws Exception {
+        Map<String, Double> result = extract("c0");
+
+        assertEquals(0.0, result.get("DBLC"), 0.0);
+        assertEquals(0.0, result.get("NOAL730D"), 0.0);
+        assertEquals(0.0, result.get("MeanDBOC730D"), 0.0);
+        assertEquals(0.0, result.get("MinNOFCFOC730D"), 0.0);
+    }
+
+    @org.junit.Test
+    public void extractTimeline() throws Exception {
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Zurich"));
+        commits.clear();
+        Random random = new Random(42);
+        // every 7.5 hours from 2016-03-20 00:00 UTC over the change to the summer time on 2016-03-27
+        long start = 1458432000000L;
+        for (int i = 0; i < 60; i++)
+            addRandomCommit("s" + i, start + i * 27000000L, random);
+        // 2016-10-29 00:30 UTC is in the day before 02:10 CET but not in the day before 02:50 CEST on 2016-10-30,
+        // the later commit of the two has the earlier threshold
+        long fallBack = 1477789200000L;
+        addRandomCommit("w0", fallBack - DAY - 30 * 60000L, random);
+        addRandomCommit("w1", fallBack - 10 * 60000L, random);
+        addRandomCommit("w2", fallBack + 10 * 60000L, random);
+        addRandomCommit("w3", fallBack + 10 * 60000L, random);
+        addRandomCommit("w4", fallBack + 5 * DAY, random);
+
+        List<Version> versions = new ArrayList<Version>();
+        for (Commit commit : commits) {
+            for (Version version : commit.getVersions()) {
+                if (version.getFileId().equals("f"))
+                    versions.add(version);
+            }
+        }
+        Collections.shuffle(versions, random);
+
+        ChangeRateFeatureGroup group = new ChangeRateFeatureGroup();
+        CommitHistoryIndex history = new CommitHistoryIndex(commits);
+        Map<String, Map<String, Double>> timeline = new HashMap<String, Map<String, Double>>();
+        group.extractTimeline(history, versions, (version, features) -> timeline.put(version.getId(), features));
+
+        assertEquals(versions.size(), timeline.size());
+        for (Version version : versions)
+            assertEquals(version.getId(), group.extract(history, version), timeline.get(version.getId()));
+        // w0 is in the 1 day window of w2 only
+        assertEquals(0.0, timeline.get("w1-0").get("MaxDBOC1D"), 0.0);
+        assertEquals(1.0 + 40 / 1440.0, timeline.get("w2-0").get("MaxDBOC1D"), 1e-9);
+    }
+
+    /**
+     * @param commitId a commit of the history
+     * @return the features of the first version of f in the commit
+     */
+    private Map<String, Double> extract(String commitId) {
+        Version version = commits.stream()
+                .filter(c -> c.getId().equals(commitId))
+                .flatMap(c -> c.getVersions().stream())
+                .filter(v -> v.getFileId().equals("f"))
+                .findFirst()
+                .get();
+        return new ChangeRateFeatureGroup().extract(commits, version, null, null);
+    }
+
+    private Commit addCommit(String id, String author, long time, Integer added, Integer deleted, Integer changed, Integer renamed) {
+        Commit commit = new Commit(id, 1, "", author, new Date(time), added, deleted, changed, renamed);
+        commits.add(commit);
+        return commit;
+    }
+
+    private void addRandomCommit(String id, long time, Random random) {
+        Commit commit = addCommit(id, "a" + random.nextInt(4), time,
+                random.nextInt(3), random.nextInt(2), random.nextBoolean() ? null : random.nextInt(5), random.nextInt(2));
+        addVersion(commit, "f", random.nextInt(50), random.nextInt(50));
+        if (random.nextInt(4) == 0)
+            addVersion(commit, "f", random.nextInt(10), random.nextInt(10));
+        if (random.nextBoolean())
+            addVersion(commit, "g", random.nextInt(50), random.nextInt(50));
+        if (random.nextInt(3) == 0)
+            commit.getIssues().add(new Issue(id, "", random.nextBoolean() ? "BUG" : "ENHANCEMENT"));
+    }
+
+    private void addVersion(Commit commit, String fileId, int linesAdded, int linesDeleted) {
+        String id = commit.getId() + "-" + commit.getVersions().size();
+        commit.getVersions().add(new Version(id, fileId, commit.getId(), fileId + ".java", linesAdded, linesDeleted, 0, false));
+    }
+}
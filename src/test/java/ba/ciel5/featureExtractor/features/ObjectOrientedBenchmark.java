@@ -0,0 +1,140 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeIndex;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeUtil;
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeWalker;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the object oriented features with lists of member names per call site (the old lookup)
+ * with the member name sets per class (ObjectOrientedFeatureGroup) on generated classes.
+ * Every generated method calls three methods of the class and one other method and reads two fields.
+ * The sizes of the classes are the arguments (default: 500 1000 2000 4000 methods).
+ */
+public class ObjectOrientedBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 500, 1000, 2000, 4000 };
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        ObjectOrientedFeatureGroup feature = new ObjectOrientedFeatureGroup();
+        for (int methods : sizes) {
+            char[] code = generateClass(methods).toCharArray();
+            CompilationUnit ast = AbstractSyntaxTreeUtil.parse(code);
+            AbstractSyntaxTreeIndex index = new AbstractSyntaxTreeIndex();
+            AbstractSyntaxTreeWalker.walk(ast, index);
+
+            // both lookups must give the same features, the first call warms up
+            boolean same = extractWithLists(ast, index).equals(feature.extract(null, null, ast, code));
+
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++)
+                extractWithLists(ast, index);
+            double lists = (System.nanoTime() - start) / 1e6 / ROUNDS;
+
+            start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++)
+                feature.extract(null, null, ast, code);
+            double sets = (System.nanoTime() - start) / 1e6 / ROUNDS;
+
+            System.out.println(String.format("%5d methods: lists %10.1f ms, sets (with the walk) %8.1f ms, same features: %s",
+                    methods, lists, sets, same));
+        }
+    }
+
+    /**
+     * @param methods number of methods
+     * @return code of a class with the methods and as many fields
+     */
+    private static String generateClass(int methods) {
+        StringBuilder code = new StringBuilder("public class Generated {\n");
+        for (int i = 0; i < methods; i++)
+            code.append("    public int field").append(i).append(";\n");
+        for (int i = 0; i < methods; i++) {
+            code.append("    public int method").append(i).append("(Generated other) {\n");
+            code.append("        method").append((i + 1) % methods).append("(this);\n");
+            code.append("        method").append((i + 2) % methods).append("(other);\n");
+            code.append("        method").append((i + 3) % methods).append("(null);\n");
+            code.append("        System.out.println(this.field").append(i).append(");\n");
+            code.append("        return other.field").append(i).append(" + this.unknown").append(i).append(";\n");
+            code.append("    }\n");
+        }
+        return code.append("}\n").toString();
+    }
+
+    /**
+     * The features before the name sets: the member names are collected again for every method
+     * @param ast abstract syntax tree (Compilation unit)
+     * @param index index of the ast
+     * @return the features
+     */
+    private static Map<String, Double> extractWithLists(CompilationUnit ast, AbstractSyntaxTreeIndex index) {
+        double weightedMethodsPerClass = 0;
+        double couplingBetweenObjects = 0;
+        double responseForClass = 0;
+        double lackOfCohesionInMethods = 0;
+        double numberOfPublicMethods = 0;
+        double numberOfPublicVariables = 0;
+        for (TypeDeclaration javaClass : AbstractSyntaxTreeUtil.getClasses(ast)) {
+            List<VariableDeclarationFragment> classVariableFragments = new ArrayList<>();
+            for (FieldDeclaration classVariable : AbstractSyntaxTreeUtil.getClassVariables(javaClass)) {
+                classVariableFragments.add((VariableDeclarationFragment) classVariable.fragments().get(0));
+                if (Modifier.isPublic(classVariable.getModifiers()))
+                    numberOfPublicVariables++;
+            }
+
+            List<MethodDeclaration> classMethods = AbstractSyntaxTreeUtil.getClassMethods(javaClass);
+            int externalMethodCalls = 0;
+            for (MethodDeclaration classMethod : classMethods) {
+                List<String> methodCallNames = index.getMethodInvocations(classMethod).stream()
+                        .map((MethodInvocation jmc) -> jmc.getName().toString())
+                        .collect(Collectors.toList());
+                methodCallNames.removeIf(m -> classMethods.stream()
+                        .map(cm -> cm.getName().toString())
+                        .collect(Collectors.toList())
+                        .contains(m));
+                externalMethodCalls += methodCallNames.size();
+
+                List<String> fieldAccessNames = index.getFieldAccesses(classMethod).stream()
+                        .map((FieldAccess fa) -> fa.getName().toString())
+                        .collect(Collectors.toList());
+                fieldAccessNames.removeIf(v -> classVariableFragments.stream()
+                        .map(jv -> jv.getName().toString())
+                        .collect(Collectors.toList())
+                        .contains(v));
+                if (fieldAccessNames.size() != 0)
+                    lackOfCohesionInMethods++;
+
+                if (Modifier.isPublic(classMethod.getModifiers()))
+                    numberOfPublicMethods++;
+            }
+            weightedMethodsPerClass += javaClass.getMethods().length;
+            couplingBetweenObjects += externalMethodCalls;
+            responseForClass += externalMethodCalls + classMethods.size();
+        }
+
+        Map<String, Double> map = new HashMap<String, Double>();
+        map.put("WMC", weightedMethodsPerClass);
+        map.put("CBO", couplingBetweenObjects);
+        map.put("RFC", responseForClass);
+        map.put("LCOM", lackOfCohesionInMethods);
+        map.put("NPM", numberOfPublicMethods);
+        map.put("NPV", numberOfPublicVariables);
+        return map;
+    }
+}
@@ -0,0 +1,85 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeUtil;
+import ba.ciel5.featureExtractor.utils.ParserOptions;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTMatcher;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the parse throughput of a new parser with bindings per file (the old parse)
+ * with the pooled parser without bindings (AbstractSyntaxTreeUtil.parse).
+ * The corpus is TestClass1 and all java files below the directory of the first argument (default: src).
+ */
+public class ParserBenchmark {
+    private static final int WARMUPROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        List<char[]> corpus = new ArrayList<char[]>();
+        corpus.add(TestClass1.getTestCode().toCharArray());
+        try (Stream<Path> files = Files.walk(Paths.get(args.length > 0 ? args[0] : "src"))) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".java")).collect(Collectors.toList()))
+                corpus.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).toCharArray());
+        }
+        System.out.println("Corpus: " + corpus.size() + " files");
+
+        // both parses must give the same trees
+        int different = 0;
+        for (char[] code : corpus) {
+            if (!parseWithNewParser(code).subtreeMatch(new ASTMatcher(true), AbstractSyntaxTreeUtil.parse(code)))
+                different++;
+        }
+        System.out.println("Different trees: " + different);
+
+        // the second run is measured after the jit compiled all of them
+        ParserOptions withBindings = new ParserOptions(true, false, null);
+        for (int run = 0; run < 2; run++) {
+            benchmark("new parser with bindings", corpus, ParserBenchmark::parseWithNewParser);
+            benchmark("pooled parser with bindings", corpus, code -> AbstractSyntaxTreeUtil.parse(code, withBindings));
+            benchmark("pooled parser without bindings", corpus, AbstractSyntaxTreeUtil::parse);
+        }
+    }
+
+    /**
+     * Parse the corpus some rounds and print the files per second
+     * @param name name of the parse
+     * @param corpus all files
+     * @param parse the parse
+     */
+    private static void benchmark(String name, List<char[]> corpus, Function<char[], CompilationUnit> parse) {
+        for (int round = 0; round < WARMUPROUNDS; round++)
+            corpus.forEach(parse::apply);
+
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++)
+            corpus.forEach(parse::apply);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-32s %8.1f files/s", name, corpus.size() * ROUNDS / seconds));
+    }
+
+    /**
+     * The parse before parser options: a new parser per file with bindings
+     * @param code as char array
+     * @return abstract syntax tree (Compilation unit)
+     */
+    private static CompilationUnit parseWithNewParser(char[] code) {
+        ASTParser parser = ASTParser.newParser(AST.JLS8);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setSource(code);
+        parser.setResolveBindings(true);
+        return (CompilationUnit) parser.createAST(null);
+    }
+}
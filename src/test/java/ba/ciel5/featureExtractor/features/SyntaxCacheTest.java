@@ -0,0 +1,137 @@
+package ba.ciel5.featureExtractor.features;
+
+import ba.ciel5.featureExtractor.utils.AbstractSyntaxTreeUtil;
+import ba.ciel5.featureExtractor.utils.FlatAbstractSyntaxTree;
+import ba.ciel5.featureExtractor.utils.LexicalScan;
+import ba.ciel5.featureExtractor.utils.SyntaxCache;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The syntax cache written by one run and read by the next: a parsed blob and a scanned blob,
+ * the records stay readable after reopening and a cut off last record is dropped.
+ */
+public class SyntaxCacheTest {
+
+    private static final ObjectId PARSED = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId SCANNED = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+    @org.junit.Rule
+    public org.junit.rules.TemporaryFolder folder = new org.junit.rules.TemporaryFolder();
+
+    private final char[] parsedCode = TestClass1.getTestCode().toCharArray();
+    private final char[] scannedCode = "// scanned only\nclass A { }\n".toCharArray();
+
+    @org.junit.Test
+    public void reopen() throws Exception {
+        File directory = folder.newFolder("cache");
+        SyntaxCache cache = open(directory);
+        putEntries(cache);
+        assertEntries(cache);
+        cache.close();
+
+        cache = open(directory);
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsTree(PARSED));
+        assertFalse(cache.containsTree(SCANNED));
+        assertEntries(cache);
+        cache.close();
+    }
+
+    @org.junit.Test
+    public void reopenTruncated() throws Exception {
+        File directory = folder.newFolder("cache");
+        SyntaxCache cache = open(directory);
+        putEntries(cache);
+        cache.close();
+
+        // a crash in the append of the scanned blob
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".seg"));
+        assertEquals(1, segments.length);
+        try (RandomAccessFile segment = new RandomAccessFile(segments[0], "rw")) {
+            segment.setLength(segment.length() - 3);
+        }
+
+        cache = open(directory);
+        assertEquals(1, cache.size());
+        assertFalse(cache.contains(SCANNED));
+        assertNull(cache.get(SCANNED));
+        assertArrayEquals(parsedCode, cache.get(PARSED).getCode());
+        // the dropped record is appended anew behind the last complete one
+        cache.put(SCANNED, new SyntaxCache.Entry(null, LexicalScan.scan(scannedCode), scannedCode));
+        cache.close();
+
+        cache = open(directory);
+        assertEntries(cache);
+        cache.close();
+    }
+
+    @org.junit.Test
+    public void locked() throws Exception {
+        File directory = folder.newFolder("cache");
+        SyntaxCache cache = open(directory);
+        try {
+            open(directory);
+            fail("a locked cache was opened");
+        } catch (IOException e) {
+            // the cache is in use
+        }
+        cache.close();
+        open(directory).close();
+    }
+
+    @org.junit.Test
+    public void sizeLimit() throws Exception {
+        SyntaxCache cache = new SyntaxCache(folder.newFolder("cache"), AbstractSyntaxTreeUtil.getDefaultOptions(), 1024);
+        cache.put(SCANNED, new SyntaxCache.Entry(null, LexicalScan.scan(scannedCode), scannedCode));
+        cache.put(PARSED, new SyntaxCache.Entry(null, LexicalScan.scan(parsedCode), parsedCode));
+        assertTrue(cache.contains(SCANNED));
+        assertFalse(cache.contains(PARSED));
+        assertEquals(1, cache.getSkipped());
+        cache.close();
+    }
+
+    private static SyntaxCache open(File directory) throws IOException {
+        return new SyntaxCache(directory, AbstractSyntaxTreeUtil.getDefaultOptions(), 0);
+    }
+
+    private void putEntries(SyntaxCache cache) throws IOException {
+        CompilationUnit ast = AbstractSyntaxTreeUtil.parse(parsedCode);
+        cache.put(PARSED, new SyntaxCache.Entry(FlatAbstractSyntaxTree.of(ast), LexicalScan.of(ast), parsedCode));
+        cache.put(SCANNED, new SyntaxCache.Entry(null, LexicalScan.scan(scannedCode), scannedCode));
+    }
+
+    private void assertEntries(SyntaxCache cache) {
+        CompilationUnit ast = AbstractSyntaxTreeUtil.parse(parsedCode);
+        FlatAbstractSyntaxTree tree = FlatAbstractSyntaxTree.of(ast);
+        LexicalScan comments = LexicalScan.of(ast);
+
+        SyntaxCache.Entry parsed = cache.get(PARSED);
+        assertArrayEquals(parsedCode, parsed.getCode());
+        assertEquals(tree.size(), parsed.getTree().size());
+        for (int node = 0; node < tree.size(); node++) {
+            assertEquals(tree.getNodeType(node), parsed.getTree().getNodeType(node));
+            assertEquals(tree.getStart(node), parsed.getTree().getStart(node));
+            assertEquals(tree.getParent(node), parsed.getTree().getParent(node));
+        }
+        assertEquals(comments.getCommentCount(), parsed.getComments().getCommentCount());
+        for (int comment = 0; comment < comments.getCommentCount(); comment++)
+            assertEquals(comments.getCommentStart(comment), parsed.getComments().getCommentStart(comment));
+
+        SyntaxCache.Entry scanned = cache.get(SCANNED);
+        assertNull(scanned.getTree());
+        assertArrayEquals(scannedCode, scanned.getCode());
+        assertEquals(1, scanned.getComments().getCommentCount());
+    }
+}